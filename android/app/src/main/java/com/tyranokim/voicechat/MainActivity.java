@@ -12,6 +12,7 @@ import com.tyranokim.voicechat.downloader.FileDownloaderPlugin;
 import com.tyranokim.voicechat.downloader.MusicLibraryPlugin;
 import com.tyranokim.voicechat.audio.NativeAudioPlugin;
 import com.tyranokim.voicechat.audio.BackgroundAudioPlugin;
+import com.tyranokim.voicechat.net.NetworkStack;
 // import com.tyranokim.voicechat.fcm.FcmPlugin;  // google-services.json 없으면 크래시
 
 public class MainActivity extends BridgeActivity {
@@ -32,6 +33,8 @@ public class MainActivity extends BridgeActivity {
         registerPlugin(BackgroundAudioPlugin.class);
         // registerPlugin(FcmPlugin.class);  // FCM 비활성화 (google-services.json 필요)
         super.onCreate(savedInstanceState);
+        // Open a pooled connection to the server now so the first resolve/stream skips TCP+TLS setup
+        NetworkStack.prewarm();
 
         // 뒤로가기 버튼 → WebView JS 이벤트로 전달 (앱 종료 방지)
         getOnBackPressedDispatcher().addCallback(this, new OnBackPressedCallback(true) {
@@ -0,0 +1,131 @@
+package com.tyranokim.voicechat.audio;
+
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
+import androidx.media3.exoplayer.DefaultLoadControl;
+import androidx.media3.exoplayer.analytics.PlayerId;
+import androidx.media3.exoplayer.upstream.DefaultAllocator;
+
+/**
+ * DefaultLoadControl whose buffer durations follow a switchable Profile.
+ *
+ * The superclass is built with the deepest profile's durations, so it still owns the allocator and
+ * the byte budget (targetBufferBytes); the active profile only tightens when loading runs and when
+ * playback may start. Switching profiles never drops buffered data.
+ *
+ * Fast start (setFastStart) lets the initial start and starts after a seek / track change use
+ * LOW_LATENCY's bufferForPlayback whatever the profile; a rebuffer still waits for the profile's own.
+ */
+@UnstableApi
+public class AdaptiveLoadControl extends DefaultLoadControl {
+
+    public enum Profile {
+        /** Start fast, keep little buffered: live streams (can't buffer past the live edge anyway). */
+        LOW_LATENCY(10_000, 30_000, 500, 1_500),
+        /** ExoPlayer-like defaults with some hysteresis. */
+        BALANCED(30_000, 90_000, 2_500, 5_000),
+        /**
+         * Fill up to 4 minutes in one burst, then let the radio idle until under 1 minute. Rides out
+         * dead zones on weak links and saves radio wakeups on good ones.
+         */
+        DEEP(60_000, 240_000, 2_500, 8_000);
+
+        final long minBufferUs;
+        final long maxBufferUs;
+        final long bufferForPlaybackUs;
+        final long bufferForPlaybackAfterRebufferUs;
+
+        Profile(int minBufferMs, int maxBufferMs, int bufferForPlaybackMs, int bufferForPlaybackAfterRebufferMs) {
+            this.minBufferUs = Util.msToUs(minBufferMs);
+            this.maxBufferUs = Util.msToUs(maxBufferMs);
+            this.bufferForPlaybackUs = Util.msToUs(bufferForPlaybackMs);
+            this.bufferForPlaybackAfterRebufferUs = Util.msToUs(bufferForPlaybackAfterRebufferMs);
+        }
+    }
+
+    private volatile Profile profile;
+    private volatile boolean fastStart = false;
+    // Hysteresis between minBufferUs and maxBufferUs (playback thread only); reset per preparation
+    private boolean loading = true;
+
+    public AdaptiveLoadControl(Profile initial) {
+        super(
+            new DefaultAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE),
+            (int) Util.usToMs(Profile.DEEP.minBufferUs),
+            (int) Util.usToMs(Profile.DEEP.maxBufferUs),
+            (int) Util.usToMs(Profile.DEEP.bufferForPlaybackUs),
+            (int) Util.usToMs(Profile.DEEP.bufferForPlaybackAfterRebufferUs),
+            DEFAULT_TARGET_BUFFER_BYTES,
+            DEFAULT_PRIORITIZE_TIME_OVER_SIZE_THRESHOLDS,
+            DEFAULT_BACK_BUFFER_DURATION_MS,
+            DEFAULT_RETAIN_BACK_BUFFER_FROM_KEYFRAME);
+        this.profile = initial;
+    }
+
+    public Profile getProfile() {
+        return profile;
+    }
+
+    /** Takes effect at the player's next loading decision; callable from any thread. */
+    public void setProfile(Profile profile) {
+        this.profile = profile;
+    }
+
+    /** Start (not after a rebuffer) on LOW_LATENCY's threshold; callable from any thread. */
+    public void setFastStart(boolean fastStart) {
+        this.fastStart = fastStart;
+    }
+
+    public boolean isFastStart() {
+        return fastStart;
+    }
+
+    // A new preparation (next playlist, stop → play) starts loading from scratch
+    @Override
+    public void onPrepared(PlayerId playerId) {
+        super.onPrepared(playerId);
+        loading = true;
+    }
+
+    @Override
+    public void onStopped(PlayerId playerId) {
+        super.onStopped(playerId);
+        loading = true;
+    }
+
+    @Override
+    public void onReleased(PlayerId playerId) {
+        super.onReleased(playerId);
+        loading = true;
+    }
+
+    @Override
+    public boolean shouldContinueLoading(Parameters parameters) {
+        Profile p = profile;
+        long minBufferUs = p.minBufferUs;
+        if (parameters.playbackSpeed > 1) {
+            // Faster playback drains the buffer faster → keep more media buffered (as DefaultLoadControl does)
+            minBufferUs = Math.min(Util.getMediaDurationForPlayoutDuration(minBufferUs, parameters.playbackSpeed), p.maxBufferUs);
+        }
+        if (parameters.bufferedDurationUs >= p.maxBufferUs) {
+            loading = false;
+        } else if (parameters.bufferedDurationUs < minBufferUs) {
+            loading = true;
+        }
+        // super's duration thresholds are the deepest profile's, so it only adds the byte budget
+        return loading && super.shouldContinueLoading(parameters);
+    }
+
+    @Override
+    public boolean shouldStartPlayback(Parameters parameters) {
+        Profile p = profile;
+        long neededUs = parameters.rebuffering ? p.bufferForPlaybackAfterRebufferUs
+            : fastStart ? Math.min(p.bufferForPlaybackUs, Profile.LOW_LATENCY.bufferForPlaybackUs) : p.bufferForPlaybackUs;
+        if (parameters.targetLiveOffsetUs != C.TIME_UNSET) {
+            neededUs = Math.min(parameters.targetLiveOffsetUs / 2, neededUs);
+        }
+        long playoutUs = Util.getPlayoutDurationForMediaDuration(parameters.bufferedDurationUs, parameters.playbackSpeed);
+        return playoutUs >= neededUs || super.shouldStartPlayback(parameters);
+    }
+}
@@ -0,0 +1,259 @@
+package com.tyranokim.voicechat.audio;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+
+import com.tyranokim.voicechat.net.NetworkStack;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Locale;
+
+import okhttp3.Call;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Cover art for the media notification and MediaSession: YouTube thumbnails and the embedded
+ * picture of local (content://) tracks.
+ *
+ *  - decoding runs on AudioTaskExecutor and subsamples while decoding (inSampleSize), then scales to
+ *    at most TARGET_SIZE_PX — a full-size cover is never held in memory
+ *  - decoded bitmaps sit in an LRU bounded by MEMORY_CACHE_BYTES (a few covers), so memory stays
+ *    flat however many tracks are skipped through
+ *  - the downsampled covers are also kept as small JPEGs (at most DISK_CACHE_FILES, oldest dropped):
+ *    revisited tracks need no network / tag parsing, and the file is what MediaSession's own bitmap
+ *    loader reads for the lock screen
+ */
+public class ArtworkLoader {
+    private static final String TAG = "ArtworkLoader";
+    private static final String DIR_NAME = "artwork";
+    private static final int TARGET_SIZE_PX = 320;
+    private static final int MEMORY_CACHE_BYTES = 4 * 1024 * 1024;
+    private static final int DISK_CACHE_FILES = 200;
+    private static final int JPEG_QUALITY = 85;
+
+    public static final class Artwork {
+        public final Bitmap bitmap;
+        /** Downsampled copy on disk (file://), for MediaMetadata.artworkUri. */
+        public final Uri fileUri;
+
+        Artwork(Bitmap bitmap, Uri fileUri) {
+            this.bitmap = bitmap;
+            this.fileUri = fileUri;
+        }
+    }
+
+    public interface Callback {
+        /** Called on the caller's handler. Not called if the track has no artwork or loading failed. */
+        void onArtwork(Artwork artwork);
+    }
+
+    private static ArtworkLoader instance;
+
+    public static synchronized ArtworkLoader getInstance(Context context) {
+        if (instance == null) {
+            Context app = context.getApplicationContext();
+            instance = new ArtworkLoader(app.getContentResolver(), StreamUrlResolver.getInstance(app),
+                new File(app.getCacheDir(), DIR_NAME));
+        }
+        return instance;
+    }
+
+    private final ContentResolver contentResolver;
+    private final StreamUrlResolver streamUrlResolver;
+    private final File dir;
+    private final LruCache<String, Artwork> memory = new LruCache<String, Artwork>(MEMORY_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(String key, Artwork value) {
+            return value.bitmap.getAllocationByteCount();
+        }
+    };
+
+    private ArtworkLoader(ContentResolver contentResolver, StreamUrlResolver streamUrlResolver, File dir) {
+        this.contentResolver = contentResolver;
+        this.streamUrlResolver = streamUrlResolver;
+        this.dir = dir;
+    }
+
+    /**
+     * Load the artwork of a playlist source (YouTube page URL or content:// URI) in the background,
+     * delivering on handler's thread; cancel the token to drop the result (e.g. the track changed).
+     * Returns null if the source kind has no artwork.
+     */
+    @Nullable
+    public CancellationToken load(String sourceUrl, Handler handler, Callback callback) {
+        String key = cacheKey(sourceUrl);
+        if (key == null) return null;
+        return AudioTaskExecutor.getInstance().submit("artwork", token -> {
+            Artwork artwork = loadBlocking(key, sourceUrl, token);
+            if (artwork != null && !token.isCancelled()) {
+                handler.post(() -> {
+                    if (!token.isCancelled()) callback.onArtwork(artwork);
+                });
+            }
+        });
+    }
+
+    /** "yt:videoId" / the content URI, or null for sources without artwork. */
+    @Nullable
+    private String cacheKey(String sourceUrl) {
+        if (sourceUrl.startsWith("content://")) return sourceUrl;
+        if ("youtube_page".equals(streamUrlResolver.classify(sourceUrl))) {
+            String videoId = streamUrlResolver.extractVideoId(sourceUrl);
+            return videoId != null ? "yt:" + videoId : null;
+        }
+        return null;
+    }
+
+    @Nullable
+    private Artwork loadBlocking(String key, String sourceUrl, CancellationToken token) {
+        Artwork cached = memory.get(key);
+        if (cached != null) return cached;
+
+        File file = new File(dir, fileName(key));
+        Bitmap bitmap = file.exists() ? decode(file) : null;
+        if (bitmap != null) {
+            // Touch for the disk LRU
+            if (!file.setLastModified(System.currentTimeMillis())) Log.d(TAG, "Failed to touch " + file.getName());
+        } else {
+            byte[] encoded = key.startsWith("yt:") ? fetchThumbnail(key.substring(3), token)
+                : embeddedPicture(Uri.parse(sourceUrl));
+            if (encoded == null || token.isCancelled()) return null;
+            bitmap = decode(encoded);
+            if (bitmap == null) return null;
+            if (!store(file, bitmap)) return null;
+        }
+        Artwork artwork = new Artwork(bitmap, Uri.fromFile(file));
+        memory.put(key, artwork);
+        return artwork;
+    }
+
+    @Nullable
+    private byte[] fetchThumbnail(String videoId, CancellationToken token) {
+        Request request = new Request.Builder()
+            .url("https://i.ytimg.com/vi/" + videoId + "/hqdefault.jpg")
+            .header("User-Agent", NetworkStack.USER_AGENT)
+            .build();
+        Call call = NetworkStack.client().newCall(request);
+        token.onCancel(call::cancel);
+        try (Response response = call.execute()) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                Log.w(TAG, "Thumbnail of " + videoId + ": HTTP " + response.code());
+                return null;
+            }
+            return body.bytes();
+        } catch (Exception e) {
+            if (!token.isCancelled()) Log.w(TAG, "Thumbnail of " + videoId + " failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // FileDescriptor variant: the (Context, Uri) one silently fails for content:// under Scoped Storage
+    @Nullable
+    private byte[] embeddedPicture(Uri uri) {
+        ParcelFileDescriptor pfd = null;
+        MediaMetadataRetriever mmr = null;
+        try {
+            pfd = contentResolver.openFileDescriptor(uri, "r");
+            if (pfd == null) return null;
+            mmr = new MediaMetadataRetriever();
+            mmr.setDataSource(pfd.getFileDescriptor());
+            return mmr.getEmbeddedPicture();
+        } catch (Exception e) {
+            Log.w(TAG, "embeddedPicture failed: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+            return null;
+        } finally {
+            if (mmr != null) try { mmr.release(); } catch (Exception ignored) {}
+            if (pfd != null) try { pfd.close(); } catch (Exception ignored) {}
+        }
+    }
+
+    @Nullable
+    private static Bitmap decode(byte[] encoded) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(encoded, 0, encoded.length, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize(bounds.outWidth, bounds.outHeight);
+        return scaleToTarget(BitmapFactory.decodeByteArray(encoded, 0, encoded.length, options));
+    }
+
+    @Nullable
+    private static Bitmap decode(File file) {
+        return scaleToTarget(BitmapFactory.decodeFile(file.getPath()));
+    }
+
+    /** Largest power of two that keeps both sides at or above TARGET_SIZE_PX. */
+    private static int sampleSize(int width, int height) {
+        int sample = 1;
+        while (width / (sample * 2) >= TARGET_SIZE_PX && height / (sample * 2) >= TARGET_SIZE_PX) sample *= 2;
+        return sample;
+    }
+
+    @Nullable
+    private static Bitmap scaleToTarget(@Nullable Bitmap bitmap) {
+        if (bitmap == null) return null;
+        int longest = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (longest <= TARGET_SIZE_PX) return bitmap;
+        float scale = (float) TARGET_SIZE_PX / longest;
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, Math.max(1, Math.round(bitmap.getWidth() * scale)),
+            Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+        if (scaled != bitmap) bitmap.recycle();
+        return scaled;
+    }
+
+    /** Write bitmap as a JPEG (tmp + rename) and drop the oldest files beyond DISK_CACHE_FILES. */
+    private synchronized boolean store(File file, Bitmap bitmap) {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.w(TAG, "Failed to create " + dir);
+            return false;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to save artwork: " + e.getMessage());
+            return false;
+        }
+        if (!tmp.renameTo(file)) {
+            Log.w(TAG, "Failed to replace " + file.getName());
+            return false;
+        }
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".jpg"));
+        if (files != null && files.length > DISK_CACHE_FILES) {
+            Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+            for (int i = 0; i < files.length - DISK_CACHE_FILES; i++) {
+                if (!files[i].delete()) Log.w(TAG, "Failed to delete " + files[i].getName());
+            }
+        }
+        return true;
+    }
+
+    private static String fileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2 + 4);
+            for (byte b : digest) sb.append(String.format(Locale.US, "%02x", b));
+            return sb.append(".jpg").toString();
+        } catch (Exception e) {
+            return Integer.toHexString(key.hashCode()) + ".jpg";
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.tyranokim.voicechat.audio;
+
+import android.content.Intent;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Immutable snapshot of the service's playback status, published through AudioStatusBus
+ * (or, out of process, as an ACTION_STATUS broadcast built by toIntent()).
+ */
+public final class AudioStatus {
+    public final boolean playing;
+    public final boolean playWhenReady;
+    public final boolean buffering;
+    public final long positionMs;
+    public final long durationMs;
+    public final float playbackSpeed;
+    /** Wall-clock time (epoch ms) positionMs was sampled at. */
+    public final long timestampMs;
+    public final int index;
+    public final boolean hasNext;
+    public final boolean hasPrev;
+    public final boolean shuffle;
+    /** off / one / all. */
+    @Nullable public final String repeatMode;
+    @Nullable public final String currentUrl;
+    @Nullable public final String title;
+    @Nullable public final String artist;
+    /** JS-friendly state: idle / buffering / playing / paused / ended. */
+    @Nullable public final String state;
+    /** ExoPlayer state name (IDLE, BUFFERING, READY, ENDED). */
+    @Nullable public final String playbackState;
+    @Nullable public final String bufferProfile;
+    @Nullable public final String error;
+
+    /** positionMs advanced to wall-clock nowMs while playing, capped at the duration when known. */
+    public long positionAt(long nowMs) {
+        if (!playing) return positionMs;
+        long position = positionMs + (long) (Math.max(0, nowMs - timestampMs) * playbackSpeed);
+        return durationMs > 0 ? Math.min(position, durationMs) : position;
+    }
+
+    private AudioStatus(Builder b) {
+        playing = b.playing;
+        playWhenReady = b.playWhenReady;
+        buffering = b.buffering;
+        positionMs = b.positionMs;
+        durationMs = b.durationMs;
+        playbackSpeed = b.playbackSpeed;
+        timestampMs = b.timestampMs;
+        index = b.index;
+        hasNext = b.hasNext;
+        hasPrev = b.hasPrev;
+        shuffle = b.shuffle;
+        repeatMode = b.repeatMode;
+        currentUrl = b.currentUrl;
+        title = b.title;
+        artist = b.artist;
+        state = b.state;
+        playbackState = b.playbackState;
+        bufferProfile = b.bufferProfile;
+        error = b.error;
+    }
+
+    /** Broadcast form, for a receiver in another process. */
+    public Intent toIntent(String packageName) {
+        Intent intent = new Intent(BackgroundAudioPlugin.ACTION_STATUS);
+        intent.putExtra("playing", playing);
+        intent.putExtra("playWhenReady", playWhenReady);
+        intent.putExtra("buffering", buffering);
+        intent.putExtra("positionMs", positionMs);
+        intent.putExtra("durationMs", durationMs);
+        intent.putExtra("playbackSpeed", playbackSpeed);
+        intent.putExtra("timestampMs", timestampMs);
+        intent.putExtra("index", index);
+        intent.putExtra("hasNext", hasNext);
+        intent.putExtra("hasPrev", hasPrev);
+        intent.putExtra("shuffle", shuffle);
+        intent.putExtra("repeatMode", repeatMode);
+        intent.putExtra("currentUrl", currentUrl);
+        intent.putExtra("title", title);
+        intent.putExtra("artist", artist);
+        intent.putExtra("state", state);
+        intent.putExtra("playbackState", playbackState);
+        intent.putExtra("bufferProfile", bufferProfile);
+        if (error != null) {
+            intent.putExtra("error", error);
+        }
+        // Explicit package targeting: ensures broadcast is delivered to our app's receiver
+        // even with Android 14+ stricter broadcast routing rules.
+        intent.setPackage(packageName);
+        return intent;
+    }
+
+    public static AudioStatus fromIntent(Intent intent) {
+        return new Builder()
+            .playing(intent.getBooleanExtra("playing", false))
+            .playWhenReady(intent.getBooleanExtra("playWhenReady", false))
+            .buffering(intent.getBooleanExtra("buffering", false))
+            .positionMs(intent.getLongExtra("positionMs", 0))
+            .durationMs(intent.getLongExtra("durationMs", 0))
+            .playbackSpeed(intent.getFloatExtra("playbackSpeed", 1f))
+            .timestampMs(intent.getLongExtra("timestampMs", System.currentTimeMillis()))
+            .index(intent.getIntExtra("index", -1))
+            .hasNext(intent.getBooleanExtra("hasNext", false))
+            .hasPrev(intent.getBooleanExtra("hasPrev", false))
+            .shuffle(intent.getBooleanExtra("shuffle", false))
+            .repeatMode(intent.getStringExtra("repeatMode"))
+            .currentUrl(intent.getStringExtra("currentUrl"))
+            .title(intent.getStringExtra("title"))
+            .artist(intent.getStringExtra("artist"))
+            .state(intent.getStringExtra("state"))
+            .playbackState(intent.getStringExtra("playbackState"))
+            .bufferProfile(intent.getStringExtra("bufferProfile"))
+            .error(intent.getStringExtra("error"))
+            .build();
+    }
+
+    public static final class Builder {
+        private boolean playing;
+        private boolean playWhenReady;
+        private boolean buffering;
+        private long positionMs;
+        private long durationMs;
+        private float playbackSpeed = 1f;
+        private long timestampMs = System.currentTimeMillis();
+        private int index = -1;
+        private boolean hasNext;
+        private boolean hasPrev;
+        private boolean shuffle;
+        @Nullable private String repeatMode;
+        @Nullable private String currentUrl;
+        @Nullable private String title;
+        @Nullable private String artist;
+        @Nullable private String state;
+        @Nullable private String playbackState;
+        @Nullable private String bufferProfile;
+        @Nullable private String error;
+
+        public Builder playing(boolean playing) { this.playing = playing; return this; }
+        public Builder playWhenReady(boolean playWhenReady) { this.playWhenReady = playWhenReady; return this; }
+        public Builder buffering(boolean buffering) { this.buffering = buffering; return this; }
+        public Builder positionMs(long positionMs) { this.positionMs = positionMs; return this; }
+        public Builder durationMs(long durationMs) { this.durationMs = durationMs; return this; }
+        public Builder playbackSpeed(float playbackSpeed) { this.playbackSpeed = playbackSpeed; return this; }
+        public Builder timestampMs(long timestampMs) { this.timestampMs = timestampMs; return this; }
+        public Builder index(int index) { this.index = index; return this; }
+        public Builder hasNext(boolean hasNext) { this.hasNext = hasNext; return this; }
+        public Builder hasPrev(boolean hasPrev) { this.hasPrev = hasPrev; return this; }
+        public Builder shuffle(boolean shuffle) { this.shuffle = shuffle; return this; }
+        public Builder repeatMode(@Nullable String repeatMode) { this.repeatMode = repeatMode; return this; }
+        public Builder currentUrl(@Nullable String currentUrl) { this.currentUrl = currentUrl; return this; }
+        public Builder title(@Nullable String title) { this.title = title; return this; }
+        public Builder artist(@Nullable String artist) { this.artist = artist; return this; }
+        public Builder state(@Nullable String state) { this.state = state; return this; }
+        public Builder playbackState(@Nullable String playbackState) { this.playbackState = playbackState; return this; }
+        public Builder bufferProfile(@Nullable String bufferProfile) { this.bufferProfile = bufferProfile; return this; }
+        public Builder error(@Nullable String error) { this.error = error; return this; }
+
+        public AudioStatus build() {
+            return new AudioStatus(this);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.tyranokim.voicechat.audio;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-process status channel from BackgroundAudioService to its listeners (BackgroundAudioPlugin).
+ *
+ * The plugin and the service share a process, so status snapshots are handed over as objects: no
+ * sendBroadcast round-trip through system_server and no Bundle marshalling on the once-a-second
+ * progress path. publish() returns false when nobody in this process listens — the service then
+ * falls back to the ACTION_STATUS broadcast (e.g. if it is ever moved to its own process).
+ */
+public final class AudioStatusBus {
+    public interface Listener {
+        /** Called on the service's thread. */
+        void onStatus(AudioStatus status);
+    }
+
+    private static final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    @Nullable private static volatile AudioStatus latest;
+
+    private AudioStatusBus() {}
+
+    public static void register(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public static void unregister(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Deliver status to every listener; false if there were none. */
+    public static boolean publish(AudioStatus status) {
+        latest = status;
+        for (Listener listener : listeners) {
+            listener.onStatus(status);
+        }
+        return !listeners.isEmpty();
+    }
+
+    /** Last published snapshot in this process, or null before the service's first status. */
+    @Nullable
+    public static AudioStatus latest() {
+        return latest;
+    }
+}
@@ -0,0 +1,101 @@
+package com.tyranokim.voicechat.audio;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide, bounded pool for the audio plugins' one-off background work (play() resolves,
+ * tail prefetches), so a burst of skips queues up on MAX_THREADS named threads instead of
+ * spawning one raw thread each.
+ *
+ *  - every task gets a CancellationToken: cancelling a queued task drops it from the queue,
+ *    cancelling a running one fires the token's listeners (HTTP calls, cache writers) and interrupts it
+ *  - queue wait and run time are logged per task name; runs over SLOW_TASK_MS are logged as warnings
+ *
+ * Tasks must not block on other tasks of this pool. StreamUrlResolver flights and ResolveScheduler
+ * jobs keep their own pools for that reason (and for the scheduler's priority queue).
+ */
+public final class AudioTaskExecutor {
+    private static final String TAG = "AudioTaskExecutor";
+    private static final int MAX_THREADS = 4;
+    private static final long SLOW_TASK_MS = 10_000;
+
+    /** Background work that checks (or registers on) its token to stop early. */
+    public interface Task {
+        void run(CancellationToken token) throws Exception;
+    }
+
+    private static AudioTaskExecutor instance;
+
+    public static synchronized AudioTaskExecutor getInstance() {
+        if (instance == null) {
+            instance = new AudioTaskExecutor();
+        }
+        return instance;
+    }
+
+    private final ThreadPoolExecutor pool;
+
+    private AudioTaskExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        pool = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            r -> new Thread(r, "AudioTask-" + threadCount.incrementAndGet()));
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /** Queue task under name (used in logs); cancel the returned token to abort it. */
+    public CancellationToken submit(String name, Task task) {
+        return submit(name, new CancellationToken(), task);
+    }
+
+    /** Queue task bound to an existing token (already cancelled → never runs). */
+    public CancellationToken submit(String name, CancellationToken token, Task task) {
+        long queuedAtMs = SystemClock.elapsedRealtime();
+        FutureTask<Void> future = new FutureTask<>(() -> {
+            runTimed(name, token, task, queuedAtMs);
+            return null;
+        });
+        token.onCancel(() -> {
+            future.cancel(true);
+            pool.remove(future);
+        });
+        if (!token.isCancelled()) pool.execute(future);
+        return token;
+    }
+
+    /** Tasks waiting for a thread (for logs / diagnostics). */
+    public int queuedCount() {
+        return pool.getQueue().size();
+    }
+
+    private void runTimed(String name, CancellationToken token, Task task, long queuedAtMs) {
+        if (token.isCancelled()) return;
+        long startMs = SystemClock.elapsedRealtime();
+        @Nullable Exception failure = null;
+        try {
+            task.run(token);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            failure = e;
+        }
+        long endMs = SystemClock.elapsedRealtime();
+        String timing = name + " waited " + (startMs - queuedAtMs) + "ms, ran " + (endMs - startMs) + "ms"
+            + (token.isCancelled() ? " (cancelled)" : "");
+        if (failure != null) {
+            Log.w(TAG, timing + " — failed: " + failure.getMessage(), failure);
+        } else if (endMs - startMs > SLOW_TASK_MS) {
+            Log.w(TAG, timing);
+        } else {
+            Log.d(TAG, timing);
+        }
+    }
+}
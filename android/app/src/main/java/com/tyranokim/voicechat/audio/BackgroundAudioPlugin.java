@@ -1,14 +1,25 @@
 package com.tyranokim.voicechat.audio;
 
 import android.content.BroadcastReceiver;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.ServiceConnection;
 import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+import androidx.annotation.OptIn;
 import androidx.core.content.ContextCompat;
+import androidx.media3.common.Player;
+import androidx.media3.common.util.UnstableApi;
 
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
@@ -18,9 +29,14 @@ import com.getcapacitor.annotation.CapacitorPlugin;
 import org.json.JSONArray;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 @CapacitorPlugin(name = "BackgroundAudio")
+@OptIn(markerClass = UnstableApi.class)
 public class BackgroundAudioPlugin extends Plugin {
     private static final String TAG = "BgAudioPlugin";
 
@@ -32,49 +48,99 @@ public class BackgroundAudioPlugin extends Plugin {
     public static final String ACTION_PREV = "com.tyranokim.voicechat.audio.ACTION_PREV";
     public static final String ACTION_SEEK = "com.tyranokim.voicechat.audio.ACTION_SEEK";
     public static final String ACTION_RATE = "com.tyranokim.voicechat.audio.ACTION_RATE";
+    public static final String ACTION_PLAY_MODE = "com.tyranokim.voicechat.audio.ACTION_PLAY_MODE";
+    public static final String ACTION_QUEUE_EDIT = "com.tyranokim.voicechat.audio.ACTION_QUEUE_EDIT";
     public static final String ACTION_STATUS = "com.tyranokim.voicechat.audio.ACTION_STATUS";
+    public static final String ACTION_RESOLVE_WINDOW = "com.tyranokim.voicechat.audio.ACTION_RESOLVE_WINDOW";
+    public static final String ACTION_BUFFER_PROFILE = "com.tyranokim.voicechat.audio.ACTION_BUFFER_PROFILE";
 
     public static final String EXTRA_URL = "url";
     public static final String EXTRA_TITLE = "title";
     public static final String EXTRA_ARTIST = "artist";
     public static final String EXTRA_PLAYLIST = "playlist";        // resolved URLs (legacy)
     public static final String EXTRA_RAW_PLAYLIST = "rawPlaylist"; // raw source URLs (new, lazy resolve)
+    public static final String EXTRA_PLAYLIST_HANDOFF = "playlistHandoff"; // PlaylistHandoff id (in-process)
     public static final String EXTRA_INDEX = "index";
     public static final String EXTRA_SOURCE_URL = "sourceUrl";
     public static final String EXTRA_URL_TYPE = "urlType";
     public static final String EXTRA_POSITION_MS = "positionMs";
     public static final String EXTRA_RATE = "rate";
     public static final String EXTRA_DURATION_MS = "durationMs";
+    public static final String EXTRA_FALLBACK_URL = "fallbackUrl";
+    public static final String EXTRA_EXPIRES_AT_MS = "expiresAtMs";
+    public static final String EXTRA_AHEAD = "ahead";
+    public static final String EXTRA_BEHIND = "behind";
+    public static final String EXTRA_PROFILE = "profile";
+    public static final String EXTRA_SHUFFLE = "shuffle";
+    public static final String EXTRA_REPEAT = "repeat";    // Player.REPEAT_MODE_*
+    public static final String EXTRA_SENT_AT_MS = "sentAtMs"; // elapsedRealtime, for ControlLatency
+    public static final String EXTRA_SEQ = "seq";             // commandSeq, orders the two paths
+    public static final String EXTRA_STEPS = "steps";         // coalesced next / prev: tracks to skip
 
     private BroadcastReceiver statusReceiver;
-    private final StreamUrlResolver streamUrlResolver = new StreamUrlResolver();
+    private AudioStatusBus.Listener statusListener;
+    // Delta subscription (main thread only); null → no "statusDelta" events
+    private final Handler statusHandler = new Handler(Looper.getMainLooper());
+    @Nullable private StatusDeltaEncoder deltaEncoder;
+    private long deltaMinIntervalMs = 1000;
+    private long lastDeltaSentMs = 0;
+    @Nullable private AudioStatus pendingDeltaStatus;
+    private boolean deltaFlushScheduled = false;
+    private final Runnable deltaFlusher = this::flushStatusDelta;
+    // Queues up to this size also travel as a JSON extra (fallback for an out-of-process service);
+    // bigger ones only through PlaylistHandoff, far below Binder's ~1MB transaction limit
+    private static final int INTENT_PLAYLIST_MAX_ITEMS = 500;
+
+    private StreamUrlResolver streamUrlResolver;
+    // The pending play()'s resolve; a newer play() cancels it (skip storms leave only one running).
+    // Cleared when it settles, only if it is still the latest (compareAndSet on its token)
+    private final AtomicReference<CancellationToken> playTask = new AtomicReference<>();
+    // Direct control path while the service runs in this process; null → Intents
+    @Nullable private volatile BackgroundAudioService.ControlBinder controls;
+    // Numbers every command send() puts out; process-wide so a recreated plugin keeps counting up.
+    // lastIntentSeq and heldCommands are guarded by this.
+    private static final AtomicLong commandSeq = new AtomicLong();
+    // Seq of the last command sent as an Intent; bound sends wait until the service received it
+    private long lastIntentSeq = 0;
+    // Issued while a play() resolves: sent right behind its ACTION_PLAY (or when it fails / is superseded)
+    private final List<Intent> heldCommands = new ArrayList<>();
+    private final ServiceConnection controlConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            // A BinderProxy (service in another process) keeps the Intent path
+            controls = binder instanceof BackgroundAudioService.ControlBinder
+                ? (BackgroundAudioService.ControlBinder) binder : null;
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            controls = null;
+        }
+    };
+    private boolean controlBound = false;
 
     @Override
     public void load() {
         super.load();
+        // Process-wide resolver: shares its disk-backed resolve cache with BackgroundAudioService
+        streamUrlResolver = StreamUrlResolver.getInstance(getContext());
 
+        // Same process as the service → snapshots arrive directly; the broadcast receiver only
+        // matters if the service runs elsewhere (the service broadcasts when nobody here listens)
+        // Published on the service's player thread; status handling (delta state) is main-thread only
+        statusListener = status -> statusHandler.post(() -> onStatus(status));
+        AudioStatusBus.register(statusListener);
         statusReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                JSObject payload = new JSObject();
-                payload.put("playing", intent.getBooleanExtra("playing", false));
-                payload.put("playWhenReady", intent.getBooleanExtra("playWhenReady", false));
-                payload.put("buffering", intent.getBooleanExtra("buffering", false));
-                payload.put("currentUrl", intent.getStringExtra("currentUrl"));
-                payload.put("title", intent.getStringExtra("title"));
-                payload.put("artist", intent.getStringExtra("artist"));
-                payload.put("positionMs", intent.getLongExtra("positionMs", 0));
-                payload.put("durationMs", intent.getLongExtra("durationMs", 0));
-                payload.put("index", intent.getIntExtra("index", -1));
-                payload.put("hasNext", intent.getBooleanExtra("hasNext", false));
-                payload.put("hasPrev", intent.getBooleanExtra("hasPrev", false));
-                payload.put("error", intent.getStringExtra("error"));
-                payload.put("state", intent.getStringExtra("state"));
-                payload.put("playbackState", intent.getStringExtra("playbackState"));
-                notifyListeners("status", payload, true);
+                onStatus(AudioStatus.fromIntent(intent));
             }
         };
 
+        // No BIND_AUTO_CREATE: connects whenever the service is (re)started, never starts it
+        controlBound = getContext().bindService(new Intent(getContext(), BackgroundAudioService.class),
+            controlConnection, 0);
+
         IntentFilter filter = new IntentFilter(ACTION_STATUS);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
             getContext().registerReceiver(statusReceiver, filter, Context.RECEIVER_NOT_EXPORTED);
@@ -86,6 +152,20 @@ public class BackgroundAudioPlugin extends Plugin {
     @Override
     protected void handleOnDestroy() {
         super.handleOnDestroy();
+        if (statusListener != null) {
+            AudioStatusBus.unregister(statusListener);
+            statusListener = null;
+        }
+        statusHandler.removeCallbacks(deltaFlusher);
+        cancelPlayTask();
+        if (controlBound) {
+            controlBound = false;
+            controls = null;
+            try {
+                getContext().unbindService(controlConnection);
+            } catch (Exception ignored) {
+            }
+        }
         try {
             if (statusReceiver != null) {
                 getContext().unregisterReceiver(statusReceiver);
@@ -95,6 +175,104 @@ public class BackgroundAudioPlugin extends Plugin {
         }
     }
 
+    private void onStatus(AudioStatus status) {
+        // Full "status" events keep going to their listeners whether or not someone subscribed to deltas
+        notifyListeners("status", toPayload(status), true);
+        if (deltaEncoder != null) offerStatusDelta(status);
+    }
+
+    private static JSObject toPayload(AudioStatus status) {
+        JSObject payload = new JSObject();
+        payload.put("playing", status.playing);
+        payload.put("playWhenReady", status.playWhenReady);
+        payload.put("buffering", status.buffering);
+        payload.put("currentUrl", status.currentUrl);
+        payload.put("title", status.title);
+        payload.put("artist", status.artist);
+        payload.put("positionMs", status.positionMs);
+        payload.put("durationMs", status.durationMs);
+        payload.put("index", status.index);
+        payload.put("hasNext", status.hasNext);
+        payload.put("hasPrev", status.hasPrev);
+        payload.put("shuffle", status.shuffle);
+        payload.put("repeatMode", status.repeatMode);
+        payload.put("error", status.error);
+        payload.put("state", status.state);
+        payload.put("playbackState", status.playbackState);
+        payload.put("bufferProfile", status.bufferProfile);
+        return payload;
+    }
+
+    /** Rate limit: the newest snapshot waits for the next slot; an error goes out immediately. */
+    private void offerStatusDelta(AudioStatus status) {
+        pendingDeltaStatus = status;
+        long waitMs = lastDeltaSentMs + deltaMinIntervalMs - SystemClock.elapsedRealtime();
+        if (waitMs <= 0 || status.error != null) {
+            statusHandler.removeCallbacks(deltaFlusher);
+            flushStatusDelta();
+        } else if (!deltaFlushScheduled) {
+            deltaFlushScheduled = true;
+            statusHandler.postDelayed(deltaFlusher, waitMs);
+        }
+    }
+
+    private void flushStatusDelta() {
+        deltaFlushScheduled = false;
+        AudioStatus status = pendingDeltaStatus;
+        pendingDeltaStatus = null;
+        if (status == null || deltaEncoder == null) return;
+        JSObject delta = deltaEncoder.encode(status);
+        if (delta == null) return;
+        lastDeltaSentMs = SystemClock.elapsedRealtime();
+        notifyListeners("statusDelta", delta);
+    }
+
+    /**
+     * Switch status delivery to "statusDelta" events. Options:
+     *  - fields: subset of StatusDeltaEncoder.FIELDS ("position" = the interpolation anchor); default all
+     *  - maxRateHz: at most this many events per second (default 1)
+     * The first event carries every subscribed field; later ones only what changed. Sent alongside
+     * the full "status" event (its listeners are unaffected) until unsubscribeStatus().
+     */
+    @PluginMethod
+    public void subscribeStatus(PluginCall call) {
+        List<String> fields = new ArrayList<>();
+        JSArray fieldArray = call.getArray("fields");
+        if (fieldArray != null) {
+            for (int i = 0; i < fieldArray.length(); i++) {
+                String field = fieldArray.optString(i, "");
+                if (!StatusDeltaEncoder.FIELDS.contains(field)) {
+                    call.reject("Unknown status field: " + field);
+                    return;
+                }
+                fields.add(field);
+            }
+        }
+        Double maxRateHz = call.getDouble("maxRateHz", 1.0);
+        double rate = maxRateHz != null && maxRateHz > 0 ? Math.min(maxRateHz, 10.0) : 1.0;
+        long minIntervalMs = (long) (1000 / rate);
+        statusHandler.post(() -> {
+            deltaEncoder = new StatusDeltaEncoder(fields);
+            deltaMinIntervalMs = minIntervalMs;
+            lastDeltaSentMs = 0;
+            // Start the stream with a full snapshot
+            AudioStatus latest = AudioStatusBus.latest();
+            if (latest != null) offerStatusDelta(latest);
+        });
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void unsubscribeStatus(PluginCall call) {
+        statusHandler.post(() -> {
+            statusHandler.removeCallbacks(deltaFlusher);
+            deltaFlushScheduled = false;
+            deltaEncoder = null;
+            pendingDeltaStatus = null;
+        });
+        call.resolve();
+    }
+
     @PluginMethod
     public void play(PluginCall call) {
         String sourceUrl = call.getString("url");
@@ -103,16 +281,27 @@ public class BackgroundAudioPlugin extends Plugin {
             return;
         }
 
-        new Thread(() -> {
+        // Settled exactly once: by the task, or by a newer play() cancelling it (even while queued)
+        AtomicBoolean settled = new AtomicBoolean(false);
+        CancellationToken token = new CancellationToken();
+        token.onCancel(() -> settle(call, settled, "Superseded by a newer play()"));
+        synchronized (this) {
+            CancellationToken previous = playTask.getAndSet(token);
+            if (previous != null) previous.cancel();
+            // Issued after the superseded play(), before this one
+            releaseHeldCommands();
+        }
+        AudioTaskExecutor.getInstance().submit("play", token, t -> {
             try {
                 String playableHint = call.getString("resolvedUrl", call.getString("playableUrl", null));
                 // Resolve ONLY the currently-requested track so playback starts quickly.
                 // Remaining playlist items resolve lazily in the service on track change.
-                StreamUrlResolver.ResolveResult current = streamUrlResolver.resolve(sourceUrl, playableHint);
+                StreamUrlResolver.ResolveResult current = streamUrlResolver.resolve(sourceUrl, playableHint, token);
+                if (token.isCancelled()) return;
                 if (!current.ok || current.playableUrl == null) {
                     String error = current.message != null ? current.message : "Failed to resolve playable URL";
                     Log.e(TAG, "play rejected: sourceType=" + current.sourceType + " reason=" + error);
-                    getActivity().runOnUiThread(() -> call.reject(error));
+                    settle(call, settled, error);
                     return;
                 }
 
@@ -123,9 +312,14 @@ public class BackgroundAudioPlugin extends Plugin {
                 intent.putExtra(EXTRA_URL, current.playableUrl);
                 intent.putExtra(EXTRA_SOURCE_URL, sourceUrl);
                 intent.putExtra(EXTRA_URL_TYPE, current.sourceType);
+                intent.putExtra(EXTRA_FALLBACK_URL, current.fallbackUrl);
+                intent.putExtra(EXTRA_EXPIRES_AT_MS, current.expiresAtMs);
                 intent.putExtra(EXTRA_TITLE, call.getString("title", "Voice Chat Audio"));
                 intent.putExtra(EXTRA_ARTIST, call.getString("artist", "Voice Chat"));
-                intent.putExtra(EXTRA_RAW_PLAYLIST, new JSONArray(rawPlaylist).toString());
+                intent.putExtra(EXTRA_PLAYLIST_HANDOFF, PlaylistHandoff.put(rawPlaylist));
+                if (rawPlaylist.size() <= INTENT_PLAYLIST_MAX_ITEMS) {
+                    intent.putExtra(EXTRA_RAW_PLAYLIST, new JSONArray(rawPlaylist).toString());
+                }
                 intent.putExtra(EXTRA_INDEX, requestedIndex);
                 // Use raw JSON access so larger values + double-encoded numbers don't lose precision
                 long durHintLong = 0L;
@@ -141,55 +335,120 @@ public class BackgroundAudioPlugin extends Plugin {
                 final long durHint = durHintLong;
 
                 Log.i(TAG, "play -> service: sourceType=" + current.sourceType + ", rawPlaylistSize=" + rawPlaylist.size() + " durationHintMs=" + durHint + " (lazy resolve enabled)");
-                startService(intent);
-                getActivity().runOnUiThread(call::resolve);
+                synchronized (this) {
+                    // Checked under the lock a newer play() cancels under: a superseded play never goes out
+                    if (token.isCancelled()) return;
+                    send(intent);
+                }
+                settle(call, settled, null);
             } catch (Exception e) {
                 Log.e(TAG, "play failed", e);
-                String msg = e.getMessage() != null ? e.getMessage() : "play failed";
-                getActivity().runOnUiThread(() -> call.reject(msg));
+                settle(call, settled, e.getMessage() != null ? e.getMessage() : "play failed");
+            } finally {
+                synchronized (this) {
+                    if (playTask.compareAndSet(token, null)) releaseHeldCommands();
+                }
             }
-        }).start();
+        });
+    }
+
+    /** Resolve (error == null) or reject call on the UI thread, unless it was already settled. */
+    private void settle(PluginCall call, AtomicBoolean settled, @Nullable String error) {
+        if (!settled.compareAndSet(false, true)) return;
+        getActivity().runOnUiThread(() -> {
+            if (error == null) call.resolve();
+            else call.reject(error);
+        });
+    }
+
+    private synchronized void cancelPlayTask() {
+        CancellationToken task = playTask.getAndSet(null);
+        if (task != null) task.cancel();
+        releaseHeldCommands();
+    }
+
+    /**
+     * Send a command to the service behind every command issued before it. While a play() resolves,
+     * commands are held and go out right after its ACTION_PLAY, so they apply to the new queue.
+     */
+    private synchronized void dispatch(Intent intent) {
+        if (playTask.get() != null) {
+            heldCommands.add(intent);
+        } else {
+            send(intent);
+        }
+    }
+
+    private synchronized void releaseHeldCommands() {
+        List<Intent> held = new ArrayList<>(heldCommands);
+        heldCommands.clear();
+        for (Intent intent : held) send(intent);
+    }
+
+    /**
+     * One ordered channel to the service: the binder when bound, else startService. Both feed the
+     * service's single command queue; a bound send waits (goes as an Intent too) until the service
+     * has received the last Intent, so it can't overtake one still in transit.
+     */
+    private synchronized void send(Intent intent) {
+        long seq = commandSeq.incrementAndGet();
+        intent.putExtra(EXTRA_SEQ, seq);
+        BackgroundAudioService.ControlBinder c = controls;
+        if (c != null && c.receivedSeq() >= lastIntentSeq) {
+            c.send(intent);
+        } else if (startService(intent)) {
+            lastIntentSeq = seq;
+        }
     }
 
     @PluginMethod
     public void pause(PluginCall call) {
-        startService(serviceIntent(ACTION_PAUSE));
+        dispatch(serviceIntent(ACTION_PAUSE));
         call.resolve();
     }
 
     @PluginMethod
     public void resume(PluginCall call) {
-        startService(serviceIntent(ACTION_RESUME));
+        dispatch(serviceIntent(ACTION_RESUME));
         call.resolve();
     }
 
     @PluginMethod
     public void stop(PluginCall call) {
-        startService(serviceIntent(ACTION_STOP));
+        dispatch(serviceIntent(ACTION_STOP));
         call.resolve();
     }
 
     @PluginMethod
     public void next(PluginCall call) {
-        startService(serviceIntent(ACTION_NEXT));
+        dispatch(serviceIntent(ACTION_NEXT));
         call.resolve();
     }
 
     @PluginMethod
     public void prev(PluginCall call) {
-        startService(serviceIntent(ACTION_PREV));
+        dispatch(serviceIntent(ACTION_PREV));
         call.resolve();
     }
 
     @PluginMethod
     public void getStatus(PluginCall call) {
-        // Force a status broadcast so JS can fill state on app resume / first mount
-        Intent intent = serviceIntent("com.tyranokim.voicechat.audio.ACTION_PING");
-        startService(intent);
-        // Build a quick best-effort snapshot from the service's last-known fields via broadcast
-        // The actual status arrives via the broadcast receiver shortly after.
+        // Force a status event (bound or not) so JS can fill state on app resume / first mount
+        dispatch(serviceIntent("com.tyranokim.voicechat.audio.ACTION_PING"));
+        // Also answer right away, without a hop to the player thread: bound → the service's current
+        // snapshot with its position advanced to now, else the last published one
         JSObject result = new JSObject();
         result.put("requested", true);
+        BackgroundAudioService.ControlBinder c = controls;
+        AudioStatus current = c != null ? c.status() : null;
+        if (current != null) {
+            JSObject status = toPayload(current);
+            status.put("positionMs", current.positionAt(System.currentTimeMillis()));
+            result.put("status", status);
+        } else {
+            AudioStatus latest = AudioStatusBus.latest();
+            if (latest != null) result.put("status", toPayload(latest));
+        }
         call.resolve(result);
     }
 
@@ -201,7 +460,114 @@ public class BackgroundAudioPlugin extends Plugin {
         if (rate > 3.0f) rate = 3.0f;
         Intent intent = serviceIntent(ACTION_RATE);
         intent.putExtra(EXTRA_RATE, rate);
-        startService(intent);
+        dispatch(intent);
+        call.resolve();
+    }
+
+    /**
+     * Play order. Options (both optional, omitted ones stay as they are):
+     *  - shuffle: random order, current track first; kept for later play() calls
+     *  - repeat: 'off' | 'one' | 'all' (next / prev wrap around with 'all')
+     */
+    @PluginMethod
+    public void setPlayMode(PluginCall call) {
+        Intent intent = serviceIntent(ACTION_PLAY_MODE);
+        Boolean shuffle = call.getBoolean("shuffle");
+        if (shuffle != null) intent.putExtra(EXTRA_SHUFFLE, shuffle.booleanValue());
+        String repeat = call.getString("repeat");
+        if (repeat != null) {
+            switch (repeat) {
+                case "off":
+                    intent.putExtra(EXTRA_REPEAT, Player.REPEAT_MODE_OFF);
+                    break;
+                case "one":
+                    intent.putExtra(EXTRA_REPEAT, Player.REPEAT_MODE_ONE);
+                    break;
+                case "all":
+                    intent.putExtra(EXTRA_REPEAT, Player.REPEAT_MODE_ALL);
+                    break;
+                default:
+                    call.reject("Unknown repeat mode: " + repeat);
+                    return;
+            }
+        }
+        dispatch(intent);
+        call.resolve();
+    }
+
+    /** Add items (source URLs) at the end of the queue. */
+    @PluginMethod
+    public void appendToQueue(PluginCall call) {
+        List<String> items = queueItems(call);
+        if (items == null) return;
+        sendQueueEdit(call, QueueEdit.insert(QueueEdit.APPEND_INDEX, items));
+    }
+
+    /** Insert items before index (index ≥ queue size appends). */
+    @PluginMethod
+    public void insertIntoQueue(PluginCall call) {
+        Integer index = queueIndex(call, "index");
+        List<String> items = index != null ? queueItems(call) : null;
+        if (items == null) return;
+        sendQueueEdit(call, QueueEdit.insert(index, items));
+    }
+
+    /** Remove count (default 1) items from index. */
+    @PluginMethod
+    public void removeFromQueue(PluginCall call) {
+        Integer index = queueIndex(call, "index");
+        if (index == null) return;
+        sendQueueEdit(call, QueueEdit.remove(index, call.getInt("count", 1)));
+    }
+
+    /** Move count (default 1) items from index so that the first of them ends up at newIndex. */
+    @PluginMethod
+    public void moveInQueue(PluginCall call) {
+        Integer index = queueIndex(call, "index");
+        Integer newIndex = index != null ? queueIndex(call, "newIndex") : null;
+        if (newIndex == null) return;
+        sendQueueEdit(call, QueueEdit.move(index, call.getInt("count", 1), newIndex));
+    }
+
+    /** Replace count items from index with items (any number, may be empty). */
+    @PluginMethod
+    public void replaceQueueRange(PluginCall call) {
+        Integer index = queueIndex(call, "index");
+        if (index == null) return;
+        List<String> items = collectRawPlaylist(call.getArray("items"), null);
+        sendQueueEdit(call, QueueEdit.replace(index, call.getInt("count", 0), items));
+    }
+
+    /** Non-negative int option name, or null after rejecting call. */
+    @Nullable
+    private Integer queueIndex(PluginCall call, String name) {
+        Integer value = call.getInt(name);
+        if (value == null || value < 0) {
+            call.reject(name + " must be a non-negative integer");
+            return null;
+        }
+        return value;
+    }
+
+    /** Non-empty "items", or null after rejecting call. */
+    @Nullable
+    private List<String> queueItems(PluginCall call) {
+        List<String> items = collectRawPlaylist(call.getArray("items"), null);
+        if (items.isEmpty()) {
+            call.reject("items is required");
+            return null;
+        }
+        return items;
+    }
+
+    /**
+     * Edit the service's queue in place (no reload), in order with the other commands (items as a
+     * JSON extra — fine for the few items an edit carries).
+     */
+    private void sendQueueEdit(PluginCall call, QueueEdit edit) {
+        Intent intent = serviceIntent(ACTION_QUEUE_EDIT);
+        edit.putInto(intent);
+        dispatch(intent);
         call.resolve();
     }
 
@@ -212,19 +578,89 @@ public class BackgroundAudioPlugin extends Plugin {
             call.reject("positionMs is required");
             return;
         }
+        // A scrubbing burst coalesces in the service's queue, only the latest position is sought
         Intent intent = serviceIntent(ACTION_SEEK);
         intent.putExtra(EXTRA_POSITION_MS, positionMs);
-        startService(intent);
+        dispatch(intent);
+        call.resolve();
+    }
+
+    /** Number of playlist items the service keeps resolved after / before the current one. */
+    @PluginMethod
+    public void setResolveWindow(PluginCall call) {
+        Intent intent = serviceIntent(ACTION_RESOLVE_WINDOW);
+        intent.putExtra(EXTRA_AHEAD, call.getInt("ahead", 3));
+        intent.putExtra(EXTRA_BEHIND, call.getInt("behind", 1));
+        dispatch(intent);
+        call.resolve();
+    }
+
+    /**
+     * Tune StreamUrlResolver. Options (all optional, omitted ones keep their current value):
+     *  - hedging: fire a second /stream request when the first exceeds the observed p95
+     *  - hedgeMinDelayMs / hedgeMaxDelayMs: clamp for the p95-based hedge delay
+     *  - directCdn: play VOD straight from the CDN when possible (proxy fallback on 403/410)
+     */
+    @PluginMethod
+    public void setResolverOptions(PluginCall call) {
+        Boolean hedging = call.getBoolean("hedging");
+        Long minDelay = call.getLong("hedgeMinDelayMs");
+        Long maxDelay = call.getLong("hedgeMaxDelayMs");
+        if (hedging != null || minDelay != null || maxDelay != null) {
+            streamUrlResolver.setHedgePolicy(
+                hedging,
+                minDelay != null ? minDelay : 0L,
+                maxDelay != null ? maxDelay : 0L
+            );
+        }
+        Boolean directCdn = call.getBoolean("directCdn");
+        if (directCdn != null) {
+            streamUrlResolver.setDirectCdnEnabled(directCdn);
+        }
+        call.resolve();
+    }
+
+    /**
+     * Player buffering profile: "auto" (default — picked from measured throughput and rebuffers),
+     * or a fixed "low_latency", "balanced" or "deep" (big bursts, fewer radio wakeups).
+     */
+    @PluginMethod
+    public void setBufferProfile(PluginCall call) {
+        String profile = call.getString("profile", "auto");
+        if (!Arrays.asList("auto", "low_latency", "balanced", "deep").contains(profile)) {
+            call.reject("Unknown buffer profile: " + profile);
+            return;
+        }
+        Intent intent = serviceIntent(ACTION_BUFFER_PROFILE);
+        intent.putExtra(EXTRA_PROFILE, profile);
+        dispatch(intent);
         call.resolve();
     }
 
+    /**
+     * On-disk VOD audio cache. Options: maxMb (optional) sets the size cap.
+     * Resolves with the current { maxMb, usedMb }.
+     */
+    @PluginMethod
+    public void setMediaCacheSize(PluginCall call) {
+        MediaCache mediaCache = MediaCache.getInstance(getContext());
+        Integer maxMb = call.getInt("maxMb");
+        if (maxMb != null && maxMb > 0) {
+            mediaCache.setMaxBytes(maxMb * 1024L * 1024L);
+        }
+        JSObject result = new JSObject();
+        result.put("maxMb", mediaCache.getMaxBytes() / (1024 * 1024));
+        result.put("usedMb", mediaCache.getUsedBytes() / (1024 * 1024));
+        call.resolve(result);
+    }
+
     /**
      * Collect raw playlist URLs WITHOUT resolving them. The service will resolve
      * each item lazily when it's about to play (on track end / next / prev).
      * This keeps the play() promise fast (one resolve, not N).
      */
     private List<String> collectRawPlaylist(JSONArray playlistArray, String fallbackSourceUrl) {
-        List<String> raw = new ArrayList<>();
+        List<String> raw = new ArrayList<>(playlistArray != null ? playlistArray.length() : 1);
         if (playlistArray != null && playlistArray.length() > 0) {
             for (int i = 0; i < playlistArray.length(); i++) {
                 String item = playlistArray.optString(i, null);
@@ -242,10 +678,12 @@ public class BackgroundAudioPlugin extends Plugin {
     private Intent serviceIntent(String action) {
         Intent intent = new Intent(getContext(), BackgroundAudioService.class);
         intent.setAction(action);
+        intent.putExtra(EXTRA_SENT_AT_MS, SystemClock.elapsedRealtime());
         return intent;
     }
 
-    private void startService(Intent intent) {
+    /** Whether the Intent was handed to the system. */
+    private boolean startService(Intent intent) {
         // Only ACTION_PLAY actually starts a foreground media session (playUrl calls
         // startForeground). Other actions (PING/PAUSE/STOP/SEEK/RATE/NEXT/PREV/RESUME) only
         // fire while the WebView/Activity is visible — plain startService is sufficient and
@@ -254,12 +692,14 @@ public class BackgroundAudioPlugin extends Plugin {
         String action = intent.getAction();
         if (ACTION_PLAY.equals(action)) {
             ContextCompat.startForegroundService(getContext(), intent);
-        } else {
-            try {
-                getContext().startService(intent);
-            } catch (IllegalStateException e) {
-                Log.w(TAG, "startService(" + action + ") failed: " + e.getMessage());
-            }
+            return true;
+        }
+        try {
+            getContext().startService(intent);
+            return true;
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "startService(" + action + ") failed: " + e.getMessage());
+            return false;
         }
     }
 }
@@ -6,10 +6,15 @@ import android.app.NotificationManager;
 import android.app.Service;
 import android.content.Intent;
 import android.content.pm.ServiceInfo;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Binder;
 import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
-import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
@@ -22,43 +27,105 @@ import androidx.media3.common.PlaybackException;
 import androidx.media3.common.PlaybackParameters;
 import androidx.media3.common.Player;
 import androidx.media3.common.util.UnstableApi;
+import androidx.media3.datasource.DataSource;
 import androidx.media3.datasource.DefaultDataSource;
-import androidx.media3.datasource.DefaultHttpDataSource;
+import androidx.media3.datasource.HttpDataSource;
+import androidx.media3.datasource.ResolvingDataSource;
+import androidx.media3.datasource.okhttp.OkHttpDataSource;
 import androidx.media3.exoplayer.ExoPlayer;
 import androidx.media3.exoplayer.source.DefaultMediaSourceFactory;
+import androidx.media3.exoplayer.upstream.DefaultBandwidthMeter;
 import androidx.media3.session.MediaSession;
 import androidx.media3.session.MediaStyleNotificationHelper;
 
 import com.tyranokim.voicechat.R;
+import com.tyranokim.voicechat.net.NetworkStack;
 
 import org.json.JSONArray;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 
 @UnstableApi
 public class BackgroundAudioService extends Service {
     private static final String TAG = "BgAudioService";
     private static final String CHANNEL_ID = "background_audio_channel";
     private static final int NOTIFICATION_ID = 14001;
+    private static final String DEFAULT_TITLE = "Voice Chat Audio";
+    private static final String DEFAULT_ARTIST = "Voice Chat";
+    // At most one notification post per interval; changes in between are folded into the next one
+    private static final long NOTIFICATION_MIN_INTERVAL_MS = 1000;
 
+    // The player's application thread: player calls, its listener callbacks, the command queue and
+    // the ticker all run here in order, so a busy main thread (WebView layout, JS) can't delay them.
+    // Everything below is touched on this thread only unless marked otherwise.
+    private HandlerThread playerThread;
+    private Handler playerHandler;
     private ExoPlayer player;
     private MediaSession mediaSession;
-    // Raw playlist (YouTube watch URLs / other) — resolved lazily.
-    private final List<String> rawPlaylist = new ArrayList<>();
-    // Sparse cache of resolved playable URLs by index. null = not yet resolved.
-    private final List<String> resolvedCache = new ArrayList<>();
-    private final StreamUrlResolver streamUrlResolver = new StreamUrlResolver();
-    private int currentIndex = -1;
-    private String currentTitle = "Voice Chat Audio";
-    private String currentArtist = "Voice Chat";
+    // Raw playlist (YouTube watch URLs / other, resolved lazily) + current index. Replaced as a whole
+    // (written on the player thread), so any thread reads a consistent snapshot without locking.
+    private volatile PlaylistSnapshot playlist = PlaylistSnapshot.EMPTY;
+    private StreamUrlResolver streamUrlResolver;
+    // Play order chosen by the app; carried over to every new playlist
+    private boolean shuffleEnabled = false;
+    private int repeatMode = Player.REPEAT_MODE_OFF;
+    private String currentTitle = DEFAULT_TITLE;
+    private String currentArtist = DEFAULT_ARTIST;
     private String currentSourceUrl;
-    // Track currently-loading index to avoid duplicate resolves
-    private volatile int resolvingIndex = -1;
+    // Page URL → stream URL the player last opened it as (lazily-resolved items only)
+    private final Map<String, StreamUrlResolver.ResolveResult> openedResults = new HashMap<>();
+    // Recoveries (refreshed / proxy URL after 403) tried for the current item
+    private int recoveryAttempts = 0;
+    private static final int MAX_RECOVERY_ATTEMPTS = 2;
+    private static final long EXPIRY_CHECK_INTERVAL_MS = 60_000;
+    // A URL with less validity left than this counts as expired when it gets refused
+    private static final long PLAY_EXPIRY_MARGIN_MS = 2 * 60_000L;
+    // Resolve-ahead window around currentIndex (current first, cancels what leaves the window)
+    private ResolveScheduler resolveScheduler;
+    private static final int DEFAULT_RESOLVE_AHEAD = 3;
+    private static final int DEFAULT_RESOLVE_BEHIND = 1;
+    // Background warm-up of the upcoming WARMUP_MAX_ITEMS playlist items (started once the first track plays)
+    @Nullable private CancellationToken playlistWarmup;
+    // A huge queue is not resolved up front: the resolve window covers whatever is reached later
+    private static final int WARMUP_MAX_ITEMS = 200;
+    // Caches the next item's first bytes during the current item's last PREFETCH_TAIL_MS
+    private NextTrackPrefetcher nextTrackPrefetcher;
+    private static final long PREFETCH_TAIL_MS = 30_000;
+    // Buffer durations follow measured throughput / rebuffers (or a profile picked by the app)
+    private BufferPolicy bufferPolicy;
+    private int lastPlaybackState = Player.STATE_IDLE;
     // Client-provided duration hint (e.g. from MediaStore for saved tracks) — used when
     // ExoPlayer hasn't parsed metadata yet so the progress bar is usable from the start.
     private long hintDurationMs = 0;
-    private final Handler progressHandler = new Handler(Looper.getMainLooper());
+    // Queue + position journal, restored in onCreate after the OS killed the process
+    private SessionStore sessionStore;
+    // Restored session sits prepared but not in the foreground until the first resume
+    private boolean restoredPaused = false;
+    // Background duration probe of a local (content://) track; raises hintDurationMs when done
+    @Nullable private CancellationToken durationProbe;
+    // Notification: one builder (style, icon set once); reposted only when its content changed
+    @Nullable private NotificationCompat.Builder notificationBuilder;
+    @Nullable private NotificationContent postedNotification;
+    private long notificationPostedAtMs = 0;
+    private final Runnable notificationUpdater = this::updateNotification;
+    // Current track's cover (downsampled, owned by ArtworkLoader's LRU) and its loading
+    @Nullable private Bitmap currentArtwork;
+    @Nullable private String artworkSource;
+    @Nullable private CancellationToken artworkLoad;
+    // Bound (in-process) control path for the plugin; any thread
+    private final ControlBinder controlBinder = new ControlBinder();
+    // Commands from both paths (onStartCommand, ControlBinder) in arrival order; guarded by itself
+    private final ArrayDeque<Command> commands = new ArrayDeque<>();
+    private boolean drainScheduled = false;
+    private volatile long receivedSeq = 0;
+    // Last published status; any thread
+    @Nullable private volatile AudioStatus lastStatus;
     private final Runnable progressTicker = new Runnable() {
         @Override
         public void run() {
@@ -68,25 +135,75 @@ public class BackgroundAudioService extends Service {
             // Don't gate on isPlaying() — audio focus dips can flip it false transiently.
             if (state == Player.STATE_READY || state == Player.STATE_BUFFERING) {
                 broadcastStatus(null);
-                progressHandler.postDelayed(this, 1000);
+                saveSessionPosition(false);
+                maybePrefetchNext();
+                bufferPolicy.update(player.isCurrentMediaItemLive());
+                playerHandler.postDelayed(this, 1000);
             }
         }
     };
 
+    // Re-resolves window entries whose URLs are about to expire, so playback never hits a dead URL
+    private final Runnable expiryRefresher = new Runnable() {
+        @Override
+        public void run() {
+            if (stopped) return;
+            refreshExpiringEntries();
+            playerHandler.postDelayed(this, EXPIRY_CHECK_INTERVAL_MS);
+        }
+    };
+
     @Override
     public void onCreate() {
         super.onCreate();
         createNotificationChannel();
+        playerThread = new HandlerThread("AudioPlayer", Process.THREAD_PRIORITY_AUDIO);
+        playerThread.start();
+        playerHandler = new Handler(playerThread.getLooper());
+        streamUrlResolver = StreamUrlResolver.getInstance(this);
+        resolveScheduler = new ResolveScheduler(streamUrlResolver, new ResolveScheduler.Host() {
+            @Override
+            public PlaylistSnapshot playlist() {
+                return playlist;
+            }
+
+            @Override
+            public void onResolved(long generation, int index, String sourceUrl, StreamUrlResolver.ResolveResult result) {
+                playerHandler.post(() -> onTrackResolved(generation, index, sourceUrl, result));
+            }
+        }, DEFAULT_RESOLVE_AHEAD, DEFAULT_RESOLVE_BEHIND);
+        sessionStore = new SessionStore(getFilesDir());
+        // Commands posted by onStartCommand queue up behind the player's creation
+        playerHandler.post(this::createPlayer);
+    }
 
-        // Use extended HTTP timeout: HLS proxy's first request calls yt-dlp (30-40s)
-        DefaultHttpDataSource.Factory httpDataSourceFactory = new DefaultHttpDataSource.Factory()
-            .setConnectTimeoutMs(60_000)
-            .setReadTimeoutMs(60_000);
+    /** Build the player (application looper = player thread), its session and listener; restore. */
+    private void createPlayer() {
+        // Shared OkHttp stack: reuses the pooled HTTP/2 connection the resolver already opened.
+        // Its streaming client has extended timeouts: HLS proxy's first request calls yt-dlp (30-40s)
+        OkHttpDataSource.Factory httpDataSourceFactory = new OkHttpDataSource.Factory(NetworkStack.streamingClient())
+            .setUserAgent(NetworkStack.USER_AGENT);
         // DefaultDataSource.Factory routes content:// to ContentDataSource, file:// to FileDataSource,
         // http(s):// to our tuned HttpDataSource. Required so locally-saved tracks play.
-        DefaultDataSource.Factory dataSourceFactory = new DefaultDataSource.Factory(this, httpDataSourceFactory);
+        DefaultDataSource.Factory defaultDataSourceFactory = new DefaultDataSource.Factory(this, httpDataSourceFactory);
+        // On-disk cache in front of the network: keyed DataSpecs (VOD) are read / written through it
+        DataSource.Factory cachingDataSourceFactory = MediaCache.getInstance(this).dataSourceFactory(defaultDataSourceFactory);
+        // YouTube page URLs in the playlist are resolved when the player opens them, before the cache:
+        // the resolved path (CDN format / proxy) is part of the cache key. A fully cached VOD track
+        // still needs no network — its resolve is a ResolveCache hit.
+        StreamDataSpecResolver specResolver = new StreamDataSpecResolver(streamUrlResolver,
+            (sourceUrl, result) -> playerHandler.post(() -> openedResults.put(sourceUrl, result)));
+        DataSource.Factory dataSourceFactory = new ResolvingDataSource.Factory(cachingDataSourceFactory, specResolver);
+        nextTrackPrefetcher = new NextTrackPrefetcher(MediaCache.getInstance(this), defaultDataSourceFactory, specResolver);
+        DefaultBandwidthMeter bandwidthMeter = DefaultBandwidthMeter.getSingletonInstance(this);
+        AdaptiveLoadControl loadControl = new AdaptiveLoadControl(AdaptiveLoadControl.Profile.BALANCED);
+        bufferPolicy = new BufferPolicy(loadControl, bandwidthMeter);
         player = new ExoPlayer.Builder(this)
-            .setMediaSourceFactory(new DefaultMediaSourceFactory(dataSourceFactory))
+            .setMediaSourceFactory(new DefaultMediaSourceFactory(dataSourceFactory)
+                .setLoadErrorHandlingPolicy(new StreamDataSpecResolver.ErrorPolicy()))
+            .setLoadControl(loadControl)
+            .setBandwidthMeter(bandwidthMeter)
+            .setLooper(playerThread.getLooper())
             .build();
         player.setWakeMode(C.WAKE_MODE_NETWORK);
         player.setAudioAttributes(
@@ -103,36 +220,86 @@ public class BackgroundAudioService extends Service {
             @Override
             public void onPlaybackStateChanged(int state) {
                 Log.d(TAG, "onPlaybackStateChanged state=" + playbackStateName(state));
+                if (state == Player.STATE_BUFFERING && lastPlaybackState == Player.STATE_READY && player.getPlayWhenReady()) {
+                    bufferPolicy.onBufferingWhilePlaying();
+                }
+                lastPlaybackState = state;
+                bufferPolicy.update(player.isCurrentMediaItemLive());
                 updateNotification();
                 broadcastStatus(null);
-                // Auto-advance to next track when current track ends
+                // Track changes are gapless transitions inside the player's playlist → ENDED means the end of it
                 if (state == Player.STATE_ENDED) {
-                    if (currentIndex >= 0 && currentIndex < rawPlaylist.size() - 1) {
-                        Log.d(TAG, "Track ended → auto next track " + (currentIndex + 1));
-                        currentIndex++;
-                        playCurrent();
-                    } else {
-                        Log.d(TAG, "Playlist ended");
-                    }
+                    Log.d(TAG, "Playlist ended");
                 }
             }
 
+            @Override
+            public void onMediaItemTransition(@Nullable MediaItem mediaItem, int reason) {
+                if (mediaItem == null || player == null) return;
+                int index = player.getCurrentMediaItemIndex();
+                if (reason == Player.MEDIA_ITEM_TRANSITION_REASON_AUTO) {
+                    Log.d(TAG, "Track ended → gapless advance to track " + index);
+                }
+                if (index != playlist.currentIndex) {
+                    playlist = playlist.withCurrentIndex(index);
+                    // The duration hint belongs to the track the client asked for
+                    hintDurationMs = 0;
+                    cancelDurationProbe();
+                }
+                recoveryAttempts = 0;
+                loadArtwork();
+                // The player owns the new current item's loading now
+                nextTrackPrefetcher.cancel();
+                resolveScheduler.focus(playlist.currentIndex);
+                saveSessionPosition(true);
+                updateNotification();
+                broadcastStatus(null);
+            }
+
             @Override
             public void onIsPlayingChanged(boolean isPlaying) {
                 Log.d(TAG, "onIsPlayingChanged isPlaying=" + isPlaying);
+                saveSessionPosition(true);
                 updateNotification();
                 broadcastStatus(null);
-                progressHandler.removeCallbacks(progressTicker);
+                playerHandler.removeCallbacks(progressTicker);
                 // Run ticker whenever the player is alive (READY/BUFFERING),
                 // not only when isPlaying — keeps UI consistent across audio-focus blips.
                 int s = player != null ? player.getPlaybackState() : Player.STATE_IDLE;
                 if (s == Player.STATE_READY || s == Player.STATE_BUFFERING) {
-                    progressHandler.post(progressTicker);
+                    playerHandler.post(progressTicker);
                 }
             }
 
             @Override
             public void onPositionDiscontinuity(Player.PositionInfo oldPosition, Player.PositionInfo newPosition, int reason) {
+                if (reason == Player.DISCONTINUITY_REASON_SEEK) {
+                    bufferPolicy.onSeek();
+                    saveSessionPosition(true);
+                }
+                broadcastStatus(null);
+            }
+
+            // Shuffle / repeat changed by a media controller (lock screen, Bluetooth, Auto)
+            @Override
+            public void onShuffleModeEnabledChanged(boolean enabled) {
+                if (enabled != (playlist.shuffle != null)) setPlayMode(enabled, repeatMode);
+            }
+
+            @Override
+            public void onRepeatModeChanged(int mode) {
+                if (mode != playlist.repeatMode) setPlayMode(shuffleEnabled, mode);
+            }
+
+            @Override
+            public void onPlayWhenReadyChanged(boolean playWhenReady, int reason) {
+                // Pause / resume while buffering doesn't change isPlaying
+                broadcastStatus(null);
+            }
+
+            @Override
+            public void onPlaybackParametersChanged(PlaybackParameters playbackParameters) {
+                saveSessionPosition(true);
                 broadcastStatus(null);
             }
 
@@ -147,9 +314,72 @@ public class BackgroundAudioService extends Service {
                     player.prepare();
                     return;
                 }
-                broadcastStatus(error.getMessage());
+                // A lazily-resolved page URL turned out to be a live stream → replace it with its HLS item
+                StreamDataSpecResolver.LiveStreamException live = causeOf(error, StreamDataSpecResolver.LiveStreamException.class);
+                if (live != null && replaceWithResolvedItem(live.sourceUrl, live.result)) {
+                    return;
+                }
+                // Direct-CDN URL refused (IP-bound after all) or expired → prepare again at the same
+                // position; reopening resolves the page URL to a refreshed URL or the server proxy
+                int httpCode = httpResponseCode(error);
+                String raw = playlist.currentSource();
+                StreamUrlResolver.ResolveResult opened = raw != null ? openedResults.get(raw) : null;
+                if ((httpCode == 403 || httpCode == 410) && opened != null && recoveryAttempts < MAX_RECOVERY_ATTEMPTS) {
+                    Log.w(TAG, "HTTP " + httpCode + " on " + opened.playableUrl);
+                    // An expired URL says nothing about the CDN refusing this video
+                    if (!opened.expiresWithin(System.currentTimeMillis(), PLAY_EXPIRY_MARGIN_MS)
+                            && !opened.playableUrl.equals(streamUrlResolver.proxyUrlFor(raw))) {
+                        streamUrlResolver.reportDirectUrlFailed(raw);
+                    }
+                    openedResults.remove(raw);
+                    recoveryAttempts++;
+                    player.prepare();
+                    return;
+                }
+                StreamDataSpecResolver.ResolveException resolveError = causeOf(error, StreamDataSpecResolver.ResolveException.class);
+                broadcastStatus(resolveError != null ? resolveError.getMessage() : error.getMessage());
             }
         });
+
+        restoreSession();
+    }
+
+    /**
+     * Bring back the session the OS killed (START_STICKY restart): the saved queue, prepared and
+     * paused at the saved track / position, so a resume continues where playback stopped. Lazily
+     * resolved items reopen from ResolveCache, so this needs no network.
+     */
+    private void restoreSession() {
+        long startMs = System.currentTimeMillis();
+        SessionStore.Session session = sessionStore.load();
+        if (session == null) return;
+        PlaylistSnapshot p = PlaylistSnapshot.create(session.sources, null, session.index)
+            .withPlayOrder(shuffleEnabled, repeatMode);
+        playlist = p;
+        currentSourceUrl = p.currentSource();
+        currentTitle = session.title;
+        currentArtist = session.artist;
+        List<MediaItem> items = new ArrayList<>(p.size());
+        for (int i = 0; i < p.size(); i++) {
+            items.add(mediaItemFor(p, i));
+        }
+        player.setMediaItems(items, p.currentIndex, session.positionMs);
+        applyPlayOrder(p);
+        player.setPlaybackParameters(new PlaybackParameters(session.rate));
+        player.setPlayWhenReady(false);
+        player.prepare();
+        restoredPaused = true;
+        playerHandler.postDelayed(expiryRefresher, EXPIRY_CHECK_INTERVAL_MS);
+        Log.i(TAG, "Restored session: " + p.size() + " items, track " + p.currentIndex + " at "
+            + session.positionMs + "ms in " + (System.currentTimeMillis() - startMs) + "ms");
+        broadcastStatus(null);
+    }
+
+    /** Journal the current track / position (throttled inside SessionStore unless force). */
+    private void saveSessionPosition(boolean force) {
+        if (player == null || stopped || playlist.isEmpty()) return;
+        sessionStore.savePosition(playlist.currentIndex, player.getCurrentPosition(),
+            player.getPlaybackParameters().speed, force);
     }
 
     @Override
@@ -158,52 +388,40 @@ public class BackgroundAudioService extends Service {
             Log.w(TAG, "onStartCommand called with null intent/action");
             return START_STICKY;
         }
+        // The main thread only enqueues: commands run in arrival order on the player thread
+        Log.d(TAG, "onStartCommand action=" + intent.getAction() + " startId=" + startId);
+        enqueueCommand(intent, "intent");
+        return START_STICKY;
+    }
 
+    private void handleCommand(Command command) {
+        Intent intent = command.intent;
         String action = intent.getAction();
-        Log.d(TAG, "onStartCommand action=" + action + " startId=" + startId);
+        Log.d(TAG, "handleCommand action=" + action + " via " + command.path);
+        long sentAtMs = intent.getLongExtra(BackgroundAudioPlugin.EXTRA_SENT_AT_MS, 0);
+        if (sentAtMs > 0) ControlLatency.record(command.path, sentAtMs);
         // Ping action: immediately broadcast current status so JS can pick up state on resume
         if ("com.tyranokim.voicechat.audio.ACTION_PING".equals(action)) {
             broadcastStatus(null);
-            return START_STICKY;
+            return;
         }
         switch (action) {
             case BackgroundAudioPlugin.ACTION_PLAY:
                 handlePlay(intent);
                 break;
             case BackgroundAudioPlugin.ACTION_PAUSE:
-                // Serialize on player's looper so consecutive pause/resume don't race
-                if (player != null) {
-                    final Player p = player;
-                    progressHandler.post(() -> p.setPlayWhenReady(false));
-                }
+                if (player != null) player.setPlayWhenReady(false);
                 break;
             case BackgroundAudioPlugin.ACTION_RESUME:
-                if (player != null) {
-                    final Player p = player;
-                    progressHandler.post(() -> {
-                        try {
-                            int s = p.getPlaybackState();
-                            Log.i(TAG, "Resume from " + playbackStateName(s) + " mediaItems=" + p.getMediaItemCount());
-                            if (s == Player.STATE_IDLE || s == Player.STATE_ENDED || p.getMediaItemCount() == 0) {
-                                stopped = false;
-                                playCurrent();
-                            } else {
-                                p.setPlayWhenReady(true);
-                            }
-                        } catch (Exception ex) {
-                            Log.e(TAG, "RESUME failed: " + ex.getMessage(), ex);
-                        }
-                    });
-                }
+                resumePlayback();
                 break;
             case BackgroundAudioPlugin.ACTION_STOP:
                 stopPlayback();
                 break;
             case BackgroundAudioPlugin.ACTION_NEXT:
-                playNext();
-                break;
             case BackgroundAudioPlugin.ACTION_PREV:
-                playPrev();
+                int steps = skipSteps(intent);
+                if (steps != 0) skipBy(steps);
                 break;
             case BackgroundAudioPlugin.ACTION_SEEK:
                 int positionMs = intent.getIntExtra(BackgroundAudioPlugin.EXTRA_POSITION_MS, -1);
@@ -211,6 +429,27 @@ public class BackgroundAudioService extends Service {
                     player.seekTo(positionMs);
                 }
                 break;
+            case BackgroundAudioPlugin.ACTION_RESOLVE_WINDOW:
+                resolveScheduler.setWindow(
+                    intent.getIntExtra(BackgroundAudioPlugin.EXTRA_AHEAD, DEFAULT_RESOLVE_AHEAD),
+                    intent.getIntExtra(BackgroundAudioPlugin.EXTRA_BEHIND, DEFAULT_RESOLVE_BEHIND));
+                break;
+            case BackgroundAudioPlugin.ACTION_BUFFER_PROFILE:
+                String profile = intent.getStringExtra(BackgroundAudioPlugin.EXTRA_PROFILE);
+                if (profile != null && bufferPolicy.setMode(profile) && player != null) {
+                    bufferPolicy.update(player.isCurrentMediaItemLive());
+                    broadcastStatus(null);
+                }
+                break;
+            case BackgroundAudioPlugin.ACTION_QUEUE_EDIT:
+                QueueEdit edit = QueueEdit.fromIntent(intent);
+                if (edit != null) editQueue(edit);
+                break;
+            case BackgroundAudioPlugin.ACTION_PLAY_MODE:
+                setPlayMode(
+                    intent.getBooleanExtra(BackgroundAudioPlugin.EXTRA_SHUFFLE, shuffleEnabled),
+                    intent.getIntExtra(BackgroundAudioPlugin.EXTRA_REPEAT, repeatMode));
+                break;
             case BackgroundAudioPlugin.ACTION_RATE:
                 float rate = intent.getFloatExtra(BackgroundAudioPlugin.EXTRA_RATE, 1.0f);
                 if (player != null) {
@@ -221,10 +460,29 @@ public class BackgroundAudioService extends Service {
             default:
                 break;
         }
+        // No blanket notification / status refresh: the player's listener reports what changed
+    }
 
-        updateNotification();
-        broadcastStatus(null);
-        return START_STICKY;
+    private void resumePlayback() {
+        if (player == null) return;
+        try {
+            int s = player.getPlaybackState();
+            Log.i(TAG, "Resume from " + playbackStateName(s) + " mediaItems=" + player.getMediaItemCount());
+            if (s == Player.STATE_IDLE || s == Player.STATE_ENDED || player.getMediaItemCount() == 0) {
+                stopped = false;
+                playCurrent();
+            } else {
+                // Paused past the URL's expiry is fine: a reconnect reopens the page
+                // URL, which resolves to a refreshed (or proxy) URL
+                player.setPlayWhenReady(true);
+                if (restoredPaused) {
+                    restoredPaused = false;
+                    startForegroundPlayback();
+                }
+            }
+        } catch (Exception ex) {
+            Log.e(TAG, "RESUME failed: " + ex.getMessage(), ex);
+        }
     }
 
     private void handlePlay(Intent intent) {
@@ -237,156 +495,252 @@ public class BackgroundAudioService extends Service {
 
         currentSourceUrl = intent.getStringExtra(BackgroundAudioPlugin.EXTRA_SOURCE_URL);
         String sourceType = valueOrDefault(intent.getStringExtra(BackgroundAudioPlugin.EXTRA_URL_TYPE), streamUrlResolver.classify(currentSourceUrl));
+        StreamUrlResolver.ResolveResult currentResolved = new StreamUrlResolver.ResolveResult(true, url, sourceType, null,
+            intent.getStringExtra(BackgroundAudioPlugin.EXTRA_FALLBACK_URL),
+            intent.getLongExtra(BackgroundAudioPlugin.EXTRA_EXPIRES_AT_MS, 0));
         Log.i(TAG, "handlePlay sourceType=" + sourceType + " source=" + currentSourceUrl);
 
-        currentTitle = valueOrDefault(intent.getStringExtra(BackgroundAudioPlugin.EXTRA_TITLE), "Voice Chat Audio");
-        currentArtist = valueOrDefault(intent.getStringExtra(BackgroundAudioPlugin.EXTRA_ARTIST), "Voice Chat");
+        currentTitle = valueOrDefault(intent.getStringExtra(BackgroundAudioPlugin.EXTRA_TITLE), DEFAULT_TITLE);
+        currentArtist = valueOrDefault(intent.getStringExtra(BackgroundAudioPlugin.EXTRA_ARTIST), DEFAULT_ARTIST);
         hintDurationMs = intent.getLongExtra(BackgroundAudioPlugin.EXTRA_DURATION_MS, 0);
         Log.i(TAG, "handlePlay hintFromIntent=" + hintDurationMs + " url=" + url);
         // For content:// URIs (local saved tracks), ALWAYS probe — never trust just the JS hint.
         // MediaStore DURATION is authoritative (we confirmed listTracks returns correct value),
-        // so use max(hint, queried) to be defensive against silent JS/bridge serialization issues.
-        if (url != null && url.startsWith("content://")) {
-            android.net.Uri u = android.net.Uri.parse(url);
-            long probed = 0;
-            try { probed = queryContentDuration(u); } catch (Exception ignored) {}
-            Log.i(TAG, "handlePlay queryContentDuration=" + probed);
-            if (probed <= 0) {
-                try { probed = mediaMetadataDuration(u); } catch (Exception ignored) {}
-                Log.i(TAG, "handlePlay mediaMetadataDuration=" + probed);
-            }
-            if (probed <= 0) {
-                try { probed = mediaPlayerDuration(u); } catch (Exception ignored) {}
-                Log.i(TAG, "handlePlay mediaPlayerDuration=" + probed);
-            }
-            if (probed > hintDurationMs) hintDurationMs = probed;
+        // so use max(hint, probed) to be defensive against silent JS/bridge serialization issues.
+        // Probing runs in the background (cached per file version); playback doesn't wait for it.
+        cancelDurationProbe();
+        if (url.startsWith("content://")) {
+            durationProbe = DurationProbe.getInstance(this).probeAsync(android.net.Uri.parse(url), playerHandler, probed -> {
+                Log.i(TAG, "Probed duration=" + probed + " (hint " + hintDurationMs + ")");
+                if (probed > hintDurationMs) {
+                    hintDurationMs = probed;
+                    broadcastStatus(null);
+                }
+            });
         }
         stopped = false; // reset stop guard on new play
+        restoredPaused = false;
         Log.i(TAG, "handlePlay hintDuration=" + hintDurationMs + " url=" + url);
 
-        // Prefer EXTRA_RAW_PLAYLIST (lazy resolve). Fall back to EXTRA_PLAYLIST (legacy: already-resolved).
-        String rawJson = intent.getStringExtra(BackgroundAudioPlugin.EXTRA_RAW_PLAYLIST);
+        // Prefer the in-process handoff (any size, no Binder / JSON), then EXTRA_RAW_PLAYLIST (lazy
+        // resolve), then EXTRA_PLAYLIST (legacy: already-resolved).
+        List<String> handedOff = PlaylistHandoff.take(intent.getLongExtra(BackgroundAudioPlugin.EXTRA_PLAYLIST_HANDOFF, -1));
+        String rawJson = handedOff == null ? intent.getStringExtra(BackgroundAudioPlugin.EXTRA_RAW_PLAYLIST) : null;
         boolean isResolved = false;
-        if (rawJson == null || rawJson.isEmpty()) {
+        if (handedOff == null && (rawJson == null || rawJson.isEmpty())) {
             rawJson = intent.getStringExtra(BackgroundAudioPlugin.EXTRA_PLAYLIST);
             isResolved = true; // legacy: items already playable
         }
         int requestedIndex = intent.getIntExtra(BackgroundAudioPlugin.EXTRA_INDEX, -1);
 
-        rawPlaylist.clear();
-        resolvedCache.clear();
+        cancelPlaylistWarmup();
+        resolveScheduler.cancelAll();
+        nextTrackPrefetcher.cancel();
+        openedResults.clear();
+        recoveryAttempts = 0;
 
+        List<String> sources = handedOff != null ? handedOff : new ArrayList<>();
+        List<StreamUrlResolver.ResolveResult> initial = isResolved ? new ArrayList<>() : null;
         if (rawJson != null) {
             try {
                 JSONArray arr = new JSONArray(rawJson);
                 for (int i = 0; i < arr.length(); i++) {
                     String item = arr.optString(i, null);
                     if (item != null && !item.isEmpty()) {
-                        rawPlaylist.add(item);
-                        resolvedCache.add(isResolved ? item : null);
+                        sources.add(item);
+                        if (initial != null) {
+                            initial.add(new StreamUrlResolver.ResolveResult(true, item, streamUrlResolver.classify(item), null));
+                        }
                     }
                 }
             } catch (Exception e) {
                 Log.w(TAG, "Failed to parse playlist JSON", e);
             }
         }
-
-        if (rawPlaylist.isEmpty()) {
-            rawPlaylist.add(valueOrDefault(currentSourceUrl, url));
-            resolvedCache.add(url); // current is already resolved
-            currentIndex = 0;
-        } else {
-            // Find requestedIndex; else find by sourceUrl; else 0
-            currentIndex = (requestedIndex >= 0 && requestedIndex < rawPlaylist.size())
-                ? requestedIndex
-                : Math.max(0, currentSourceUrl != null ? rawPlaylist.indexOf(currentSourceUrl) : 0);
+        if (sources.isEmpty()) {
+            sources = new ArrayList<>();
+            sources.add(valueOrDefault(currentSourceUrl, url));
         }
 
+        // New generation: results still in flight for the previous playlist are dropped
+        PlaylistSnapshot p = PlaylistSnapshot.create(sources, initial, Math.max(0, requestedIndex));
+        if (requestedIndex < 0 || requestedIndex >= p.size()) {
+            // No valid requestedIndex → find by sourceUrl (hash lookup); else 0
+            p = p.withCurrentIndex(Math.max(0, p.indexOf(currentSourceUrl)));
+        }
         // Cache the already-resolved current URL so we don't re-resolve immediately
-        if (currentIndex >= 0 && currentIndex < resolvedCache.size()) {
-            resolvedCache.set(currentIndex, url);
+        p.setResolved(p.generation, p.currentIndex, p.sources.get(p.currentIndex), currentResolved);
+        playlist = p.withPlayOrder(shuffleEnabled, repeatMode);
+        sessionStore.saveQueue(p.sources, currentTitle, currentArtist);
+        Log.i(TAG, "handlePlay playlist size=" + p.size() + (handedOff != null ? " (in-process handoff)" : ""));
+
+        loadPlaylist();
+        warmPlaylist();
+        playerHandler.removeCallbacks(expiryRefresher);
+        playerHandler.postDelayed(expiryRefresher, EXPIRY_CHECK_INTERVAL_MS);
+    }
+
+    /**
+     * Resolve the next WARMUP_MAX_ITEMS not-yet-resolved playlist items in the background (bounded
+     * parallelism inside StreamUrlResolver), nearest upcoming tracks first, so later track changes
+     * start instantly.
+     */
+    private void warmPlaylist() {
+        PlaylistSnapshot target = playlist;
+        List<Integer> indices = new ArrayList<>();
+        List<String> sources = new ArrayList<>();
+        int size = target.size();
+        for (int offset = 1; offset < size && sources.size() < WARMUP_MAX_ITEMS; offset++) {
+            int idx = (target.currentIndex + offset) % size;
+            if (!target.isResolved(idx)) {
+                indices.add(idx);
+                sources.add(target.sources.get(idx));
+            }
         }
+        if (sources.isEmpty()) return;
+        Log.i(TAG, "Warming " + sources.size() + " playlist items");
+        playlistWarmup = streamUrlResolver.resolveAll(sources, (position, sourceUrl, r) -> {
+            int idx = indices.get(position);
+            playerHandler.post(() -> onTrackResolved(target.generation, idx, sourceUrl, r));
+        });
+    }
 
-        playCurrent();
+    private void cancelDurationProbe() {
+        if (durationProbe != null) {
+            durationProbe.cancel();
+            durationProbe = null;
+        }
+    }
+
+    private void cancelArtworkLoad() {
+        if (artworkLoad != null) {
+            artworkLoad.cancel();
+            artworkLoad = null;
+        }
+        artworkSource = null;
     }
 
     /**
-     * Play the track at currentIndex. If its resolved URL isn't cached yet,
-     * resolve it in the background and play once ready. Service main thread is
-     * never blocked by network I/O.
+     * Load the current track's cover (YouTube thumbnail / embedded picture) for the notification's
+     * large icon and the session's artworkUri. Until it arrives the notification shows none.
      */
-    private void playCurrent() {
-        if (player == null || currentIndex < 0 || currentIndex >= rawPlaylist.size()) {
-            Log.w(TAG, "playCurrent skipped (invalid state) index=" + currentIndex + " size=" + rawPlaylist.size());
-            return;
+    private void loadArtwork() {
+        PlaylistSnapshot p = playlist;
+        String source = p.currentSource();
+        if (source != null && source.equals(artworkSource)) return;
+        cancelArtworkLoad();
+        currentArtwork = null;
+        if (source == null) return;
+        artworkSource = source;
+        artworkLoad = ArtworkLoader.getInstance(this).load(source, playerHandler, artwork -> {
+            if (!source.equals(playlist.currentSource())) return;
+            currentArtwork = artwork.bitmap;
+            attachArtwork(playlist.currentIndex, artwork.fileUri);
+            updateNotification();
+        });
+    }
+
+    /**
+     * Put artworkUri (ArtworkLoader's downsampled file) into the item's metadata, so MediaSession's
+     * bitmap loader shows it on the lock screen. Same URI → the player updates the item in place.
+     */
+    private void attachArtwork(int index, Uri artworkUri) {
+        PlaylistSnapshot p = playlist;
+        if (player == null || player.getMediaItemCount() != p.size() || !p.contains(index)) return;
+        MediaItem item = player.getMediaItemAt(index);
+        if (artworkUri.equals(item.mediaMetadata.artworkUri)) return;
+        player.replaceMediaItem(index, item.buildUpon()
+            .setMediaMetadata(item.mediaMetadata.buildUpon().setArtworkUri(artworkUri).build())
+            .build());
+        if (p.shuffle != null) player.setShuffleOrder(p.shuffle);
+    }
+
+    private void cancelPlaylistWarmup() {
+        if (playlistWarmup != null) {
+            playlistWarmup.cancel();
+            playlistWarmup = null;
         }
+    }
 
-        String cached = currentIndex < resolvedCache.size() ? resolvedCache.get(currentIndex) : null;
-        if (cached != null && !cached.isEmpty()) {
-            playUrl(cached);
-            // Pre-warm next item resolution in background to make track changes feel instant
-            prefetchNext();
+    /**
+     * Hand the whole playlist to the player as one media item list starting at currentIndex, so
+     * track changes are gapless and the next item buffers while the current one is still playing.
+     * Unresolved YouTube items are resolved when the player opens them (StreamDataSpecResolver);
+     * the resolve scheduler keeps the items around currentIndex resolved ahead of that.
+     */
+    private void loadPlaylist() {
+        PlaylistSnapshot p = playlist;
+        if (player == null || !p.contains(p.currentIndex)) {
+            Log.w(TAG, "loadPlaylist skipped (invalid state) index=" + p.currentIndex + " size=" + p.size());
             return;
         }
+        List<MediaItem> items = new ArrayList<>(p.size());
+        for (int i = 0; i < p.size(); i++) {
+            items.add(mediaItemFor(p, i));
+        }
+        Log.i(TAG, "loadPlaylist size=" + items.size() + " index=" + p.currentIndex);
+        // TIME_UNSET → media item's default position (live edge for live streams)
+        player.setMediaItems(items, p.currentIndex, C.TIME_UNSET);
+        applyPlayOrder(p);
+        player.prepare();
+        player.play();
+        resolveScheduler.focus(p.currentIndex);
+        startForegroundPlayback();
+    }
 
-        // Not yet resolved → broadcast buffering and resolve in background
-        broadcastStatus(null);
-        final int idx = currentIndex;
-        if (resolvingIndex == idx) return; // already resolving
-        resolvingIndex = idx;
-        new Thread(() -> {
-            try {
-                String raw = rawPlaylist.get(idx);
-                Log.i(TAG, "Resolving track " + idx + " lazily: " + raw);
-                StreamUrlResolver.ResolveResult r = streamUrlResolver.resolve(raw, null);
-                if (r.ok && r.playableUrl != null) {
-                    if (idx < resolvedCache.size()) resolvedCache.set(idx, r.playableUrl);
-                    // Only play if user hasn't already skipped to another track
-                    if (!stopped && idx == currentIndex) {
-                        progressHandler.post(() -> {
-                            playUrl(r.playableUrl);
-                            prefetchNext();
-                        });
-                    }
-                } else {
-                    Log.w(TAG, "Resolve failed for track " + idx + ": " + r.message);
-                    progressHandler.post(() -> broadcastStatus("재생 불가: " + r.message));
-                }
-            } finally {
-                resolvingIndex = -1;
-            }
-        }).start();
+    /** Jump to the track at currentIndex (from its start), reloading the playlist if the player lost it. */
+    private void playCurrent() {
+        PlaylistSnapshot p = playlist;
+        if (player == null || !p.contains(p.currentIndex)) {
+            Log.w(TAG, "playCurrent skipped (invalid state) index=" + p.currentIndex + " size=" + p.size());
+            return;
+        }
+        if (player.getMediaItemCount() != p.size()) {
+            loadPlaylist();
+            return;
+        }
+        player.seekTo(p.currentIndex, C.TIME_UNSET);
+        if (player.getPlaybackState() == Player.STATE_IDLE) player.prepare();
+        player.play();
+        resolveScheduler.focus(p.currentIndex);
+        startForegroundPlayback();
     }
 
-    /** Resolve the next track in background to make ⏭ feel instant. */
-    private void prefetchNext() {
-        int nextIdx = currentIndex + 1;
-        if (nextIdx >= rawPlaylist.size() || nextIdx >= resolvedCache.size()) return;
-        if (resolvedCache.get(nextIdx) != null) return;
-        new Thread(() -> {
-            try {
-                String raw = rawPlaylist.get(nextIdx);
-                StreamUrlResolver.ResolveResult r = streamUrlResolver.resolve(raw, null);
-                if (r.ok && r.playableUrl != null && nextIdx < resolvedCache.size()) {
-                    resolvedCache.set(nextIdx, r.playableUrl);
-                    Log.d(TAG, "Prefetched track " + nextIdx);
-                }
-            } catch (Exception e) {
-                Log.w(TAG, "prefetchNext error: " + e.getMessage());
-            }
-        }).start();
+    /**
+     * Media item for playlist index. A known non-expiring URL (local file, proxy, live HLS, legacy
+     * pre-resolved playlist) is played as is; YouTube items otherwise keep their page URL and are
+     * resolved when the player opens them, so an expiring CDN URL is never baked into the playlist.
+     */
+    private MediaItem mediaItemFor(PlaylistSnapshot p, int index) {
+        String raw = p.sources.get(index);
+        StreamUrlResolver.ResolveResult r = p.resolvedAt(index);
+        boolean lazy = "youtube_page".equals(streamUrlResolver.classify(raw));
+        String url = r != null && r.ok && r.playableUrl != null && (!lazy || r.expiresAtMs == 0) ? r.playableUrl : raw;
+        return buildMediaItem(url, raw);
     }
 
-    private void playUrl(String currentUrl) {
-        if (player == null || currentUrl == null) return;
-        String urlType = streamUrlResolver.classify(currentUrl);
-        Log.i(TAG, "playUrl index=" + currentIndex + " urlType=" + urlType + " url=" + currentUrl);
+    /**
+     * MediaCache key for an item: videoId + source path for YouTube VOD (StreamUrlResolver.cacheKeyFor;
+     * a page URL item gets it from StreamDataSpecResolver once resolved), the URL for other HTTP
+     * files, none for HLS and local files.
+     */
+    @Nullable
+    private String cacheKeyFor(String url, String sourceUrl) {
+        String urlType = streamUrlResolver.classify(url);
+        if ("hls".equals(urlType) || "dash".equals(urlType)) return null;
+        if ("youtube_page".equals(streamUrlResolver.classify(sourceUrl))) {
+            return url.equals(sourceUrl) ? null : streamUrlResolver.cacheKeyFor(sourceUrl, url);
+        }
+        return "http".equals(urlType) || "audio_file".equals(urlType) ? url : null;
+    }
 
-        boolean isLiveProxy = currentUrl.contains("/hls-proxy");
+    private MediaItem buildMediaItem(String url, String sourceUrl) {
         MediaItem.Builder mediaItemBuilder = new MediaItem.Builder()
-            .setUri(currentUrl)
-            .setMimeType(inferMimeType(currentUrl));
-        if (isLiveProxy) {
+            .setMediaId(sourceUrl)
+            .setUri(url)
+            .setMimeType(inferMimeType(url))
+            .setCustomCacheKey(cacheKeyFor(url, sourceUrl));
+        if (url.contains("/hls-proxy")) {
             // Live stream: stay 5s behind live edge for stability
             mediaItemBuilder.setLiveConfiguration(
                 new MediaItem.LiveConfiguration.Builder()
@@ -395,15 +749,210 @@ public class BackgroundAudioService extends Service {
                     .setMaxOffsetMs(20_000)
                     .build()
             );
-            Log.i(TAG, "Live stream configured with LiveConfiguration for " + currentUrl);
+            Log.i(TAG, "Live stream configured with LiveConfiguration for " + url);
         }
-        MediaItem mediaItem = mediaItemBuilder.build();
+        return mediaItemBuilder.build();
+    }
 
-        player.setMediaItem(mediaItem);
-        player.prepare();
-        player.play();
+    /**
+     * Apply an incremental queue edit without reloading: the snapshot becomes an edit of the same
+     * queue (resolve results follow their source URL, running resolves are kept, a shuffle keeps its
+     * order), and the player gets only the k-item add / remove / move / replace, so the current item
+     * keeps playing unless the edit removes it. The snapshot is swapped first: the player's item
+     * transition (if any) then lands on the edited queue. The session journals just the edit.
+     */
+    private void editQueue(QueueEdit requested) {
+        PlaylistSnapshot p = playlist;
+        QueueEdit edit = requested.clampedTo(p.size());
+        if (edit == null) return;
+        // A replace that puts the current source back in its slot goes around it, so it keeps playing
+        List<QueueEdit> parts = edit.keeping(p.sources, p.currentIndex);
+        if (parts != null) {
+            for (QueueEdit part : parts) editQueue(part);
+            return;
+        }
+        PlaylistSnapshot next = p.isEmpty()
+            ? PlaylistSnapshot.create(edit.apply(p.sources), null, 0).withPlayOrder(shuffleEnabled, repeatMode)
+            : p.edited(edit);
+        // Only a player holding exactly this queue can take the edit in place; otherwise the next
+        // play / resume loads the edited queue
+        boolean inPlayer = player != null && !p.isEmpty() && player.getMediaItemCount() == p.size();
+        long startMs = SystemClock.elapsedRealtime();
+        playlist = next;
+        nextTrackPrefetcher.cancel();
+        if (inPlayer) {
+            switch (edit.op) {
+                case QueueEdit.INSERT:
+                    player.addMediaItems(edit.index, mediaItemsFor(next, edit.index, edit.items.size()));
+                    break;
+                case QueueEdit.REMOVE:
+                    player.removeMediaItems(edit.index, edit.index + edit.count);
+                    break;
+                case QueueEdit.MOVE:
+                    player.moveMediaItems(edit.index, edit.index + edit.count, edit.newIndex);
+                    break;
+                case QueueEdit.REPLACE:
+                    player.replaceMediaItems(edit.index, edit.index + edit.count,
+                        mediaItemsFor(next, edit.index, edit.items.size()));
+                    break;
+                default:
+                    break;
+            }
+            if (next.shuffle != null) player.setShuffleOrder(next.shuffle);
+        }
+        Log.i(TAG, "Queue " + edit.op + " at " + edit.index + " (" + Math.max(edit.count, edit.items.size())
+            + " items): size " + p.size() + " → " + next.size() + ", current " + p.currentIndex + " → "
+            + playlist.currentIndex + " in " + (SystemClock.elapsedRealtime() - startMs) + "ms");
+        if (!Objects.equals(p.currentSource(), playlist.currentSource())) {
+            // The title / artist play() gave belong to the item that was removed / replaced
+            currentTitle = DEFAULT_TITLE;
+            currentArtist = DEFAULT_ARTIST;
+            loadArtwork();
+            updateNotification();
+        }
+        if (!playlist.isEmpty()) resolveScheduler.focus(playlist.currentIndex);
+        if (!stopped) {
+            if (p.isEmpty()) sessionStore.saveQueue(playlist.sources, currentTitle, currentArtist);
+            else sessionStore.saveEdit(edit, currentTitle, currentArtist);
+            saveSessionPosition(true);
+        }
+        broadcastStatus(null);
+    }
+
+    private List<MediaItem> mediaItemsFor(PlaylistSnapshot p, int from, int count) {
+        List<MediaItem> items = new ArrayList<>(count);
+        for (int i = from; i < from + count; i++) {
+            items.add(mediaItemFor(p, i));
+        }
+        return items;
+    }
+
+    /**
+     * Switch shuffle / repeat. The player gets the same order as the playlist snapshot; the resolve
+     * window re-centres along it and a tail prefetch of the old "next" item is dropped.
+     */
+    private void setPlayMode(boolean shuffle, int repeat) {
+        if (repeat != Player.REPEAT_MODE_ONE && repeat != Player.REPEAT_MODE_ALL) repeat = Player.REPEAT_MODE_OFF;
+        shuffleEnabled = shuffle;
+        repeatMode = repeat;
+        PlaylistSnapshot p = playlist.withPlayOrder(shuffle, repeat);
+        if (p == playlist) return;
+        playlist = p;
+        Log.i(TAG, "Play mode: shuffle=" + shuffle + " repeat=" + repeatModeName(repeat));
+        if (player != null && player.getMediaItemCount() == p.size()) applyPlayOrder(p);
+        nextTrackPrefetcher.cancel();
+        if (p.currentIndex >= 0) resolveScheduler.focus(p.currentIndex);
+        broadcastStatus(null);
+    }
+
+    /** Give the player p's shuffle order and repeat mode (again after its item list changed). */
+    private void applyPlayOrder(PlaylistSnapshot p) {
+        if (p.shuffle != null) player.setShuffleOrder(p.shuffle);
+        player.setShuffleModeEnabled(p.shuffle != null);
+        player.setRepeatMode(p.repeatMode);
+    }
+
+    /**
+     * Replace the player's item at index with a fresh one from p, keeping its metadata (artwork).
+     * The player rebuilds its shuffle order on item edits, so p's order is put back.
+     */
+    private void replaceMediaItem(PlaylistSnapshot p, int index) {
+        player.replaceMediaItem(index, mediaItemFor(p, index).buildUpon()
+            .setMediaMetadata(player.getMediaItemAt(index).mediaMetadata)
+            .build());
+        if (p.shuffle != null) player.setShuffleOrder(p.shuffle);
+    }
+
+    /**
+     * Swap the media item of sourceUrl (nearest at/after currentIndex) for one built from result,
+     * e.g. a page URL that turned out to be live. Returns false if the playlist no longer has it.
+     */
+    private boolean replaceWithResolvedItem(String sourceUrl, StreamUrlResolver.ResolveResult result) {
+        PlaylistSnapshot p = playlist;
+        if (player == null || player.getMediaItemCount() != p.size()) return false;
+        int index = p.indexOf(sourceUrl);
+        if (index < 0) return false;
+        // Listed again after the current item (rare) → that occurrence is the one being opened
+        for (int i = Math.max(index, p.currentIndex); i < p.size() && index < p.currentIndex; i++) {
+            if (sourceUrl.equals(p.sources.get(i))) index = i;
+        }
+        Log.i(TAG, "Track " + index + " → " + result.sourceType + " item " + result.playableUrl);
+        p.setResolved(p.generation, index, sourceUrl, result);
+        replaceMediaItem(p, index);
+        if (player.getPlaybackState() == Player.STATE_IDLE) {
+            player.seekTo(index, C.TIME_UNSET);
+            player.prepare();
+        }
+        return true;
+    }
+
+    /** Scheduler / warm-up result for playlist generation, on the player thread. */
+    private void onTrackResolved(long generation, int idx, String sourceUrl, StreamUrlResolver.ResolveResult r) {
+        PlaylistSnapshot p = playlist;
+        if (!r.ok || r.playableUrl == null) {
+            if (p.isSameQueue(generation)) Log.w(TAG, "Resolve failed for " + sourceUrl + ": " + r.message);
+            return;
+        }
+        // Newest result wins (a refresh replaces an expiring URL); a playlist that has since been
+        // replaced drops it, an edited one stores it where sourceUrl is now
+        idx = p.setResolved(generation, idx, sourceUrl, r);
+        if (idx < 0) return;
+        Log.d(TAG, "Prefetched track " + idx);
+        // An upcoming page URL that is live can't play as the progressive placeholder → swap it
+        // now, before the player starts buffering it
+        if ("hls".equals(streamUrlResolver.classify(r.playableUrl)) && idx != p.currentIndex
+                && player != null && player.getMediaItemCount() == p.size()) {
+            MediaItem.LocalConfiguration item = player.getMediaItemAt(idx).localConfiguration;
+            if (item != null && !r.playableUrl.equals(item.uri.toString())) {
+                replaceMediaItem(p, idx);
+            }
+        }
+    }
+
+    /**
+     * In the current item's last PREFETCH_TAIL_MS, warm the next one (first bytes into the media
+     * cache / HLS manifest) so the boundary or a ⏭ starts from local data.
+     */
+    private void maybePrefetchNext() {
+        if (player == null || !player.hasNextMediaItem() || player.isCurrentMediaItemLive()) return;
+        long duration = player.getDuration();
+        if (duration == C.TIME_UNSET || duration - player.getCurrentPosition() > PREFETCH_TAIL_MS) return;
+        int next = player.getNextMediaItemIndex();
+        nextTrackPrefetcher.prefetch(next, player.getMediaItemAt(next));
+    }
 
-        Notification notification = buildNotification();
+    /** Re-resolve entries in the resolve window whose URLs expire within the refresh margin. */
+    private void refreshExpiringEntries() {
+        PlaylistSnapshot p = playlist;
+        long now = System.currentTimeMillis();
+        for (int idx : resolveScheduler.windowIndices()) {
+            StreamUrlResolver.ResolveResult r = p.resolvedAt(idx);
+            if (r != null && r.expiresWithin(now, ResolveCache.EXPIRY_REFRESH_MARGIN_MS)) {
+                Log.i(TAG, "Track " + idx + " URL expires in " + (r.expiresAtMs - now) / 1000 + "s — refreshing");
+                resolveScheduler.refresh(idx);
+            }
+        }
+    }
+
+    /** First cause of error that is a type, or null. */
+    @Nullable
+    private static <T extends Throwable> T causeOf(PlaybackException error, Class<T> type) {
+        for (Throwable t = error.getCause(); t != null; t = t.getCause()) {
+            if (type.isInstance(t)) return type.cast(t);
+        }
+        return null;
+    }
+
+    /** HTTP status behind a playback error, or -1 if it wasn't a bad HTTP response. */
+    private int httpResponseCode(PlaybackException error) {
+        HttpDataSource.InvalidResponseCodeException e = causeOf(error, HttpDataSource.InvalidResponseCodeException.class);
+        return e != null ? e.responseCode : -1;
+    }
+
+    private void startForegroundPlayback() {
+        NotificationContent content = currentNotificationContent();
+        Notification notification = buildNotification(content);
+        markNotificationPosted(content);
         Log.i(TAG, "startForeground id=" + NOTIFICATION_ID + " title=" + currentTitle);
         // Android 14+ (UPSIDE_DOWN_CAKE, API 34) requires explicit foreground service type
         // matching one declared in the manifest, or startForeground throws SecurityException.
@@ -419,18 +968,22 @@ public class BackgroundAudioService extends Service {
         }
     }
 
-    private void playNext() {
-        if (currentIndex < rawPlaylist.size() - 1) {
-            currentIndex++;
-            playCurrent();
+    /**
+     * Move steps tracks along the play order (negative: back) and play from there; stops at either
+     * end. Going back from the first track restarts it.
+     */
+    private void skipBy(int steps) {
+        PlaylistSnapshot p = playlist;
+        int index = p.currentIndex;
+        for (int i = 0; i < Math.abs(steps); i++) {
+            int to = steps > 0 ? p.nextIndex(index) : p.previousIndex(index);
+            if (to < 0) break;
+            index = to;
         }
-    }
-
-    private void playPrev() {
-        if (currentIndex > 0) {
-            currentIndex--;
+        if (index != p.currentIndex) {
+            playlist = p.withCurrentIndex(index);
             playCurrent();
-        } else if (player != null) {
+        } else if (steps < 0 && player != null) {
             player.seekTo(0);
         }
     }
@@ -453,37 +1006,98 @@ public class BackgroundAudioService extends Service {
         } catch (Exception e) {
             Log.w(TAG, "player.stop() failed: " + e.getMessage());
         }
-        resolvingIndex = -1;
+        resolveScheduler.cancelAll();
+        cancelPlaylistWarmup();
+        cancelDurationProbe();
+        cancelArtworkLoad();
+        currentArtwork = null;
+        nextTrackPrefetcher.cancel();
+        playerHandler.removeCallbacks(expiryRefresher);
+        sessionStore.clear();
         stopped = true;
-        progressHandler.removeCallbacks(progressTicker);
+        playerHandler.removeCallbacks(notificationUpdater);
+        postedNotification = null;
+        playerHandler.removeCallbacks(progressTicker);
         try { stopForeground(STOP_FOREGROUND_REMOVE); } catch (Exception ignored) {}
         broadcastStatus(null);
     }
 
-    private Notification buildNotification() {
-        String title = currentTitle;
-        String text = currentArtist;
+    /** What the notification shows; a post is skipped when this equals what was posted last. */
+    private static final class NotificationContent {
+        final String title;
+        final String text;
+        final boolean playing;
+        // Compared by identity: ArtworkLoader hands out the same bitmap for a cached cover
+        @Nullable final Bitmap artwork;
+
+        NotificationContent(String title, String text, boolean playing, @Nullable Bitmap artwork) {
+            this.title = title;
+            this.text = text;
+            this.playing = playing;
+            this.artwork = artwork;
+        }
 
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
-            .setSmallIcon(R.mipmap.ic_launcher)
-            .setContentTitle(title)
-            .setContentText(text)
-            .setOngoing(player != null && player.isPlaying())
-            .setOnlyAlertOnce(true)
-            .setVisibility(NotificationCompat.VISIBILITY_PUBLIC);
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof NotificationContent)) return false;
+            NotificationContent other = (NotificationContent) o;
+            return playing == other.playing && artwork == other.artwork
+                && Objects.equals(title, other.title) && Objects.equals(text, other.text);
+        }
 
-        // MediaStyle: shows media controls on lock screen and keeps OS from killing us
-        if (mediaSession != null) {
-            builder.setStyle(new MediaStyleNotificationHelper.MediaStyle(mediaSession));
+        @Override
+        public int hashCode() {
+            return Objects.hash(title, text, playing, System.identityHashCode(artwork));
         }
+    }
 
-        return builder.build();
+    private NotificationContent currentNotificationContent() {
+        return new NotificationContent(currentTitle, currentArtist, player != null && player.isPlaying(), currentArtwork);
     }
 
+    private Notification buildNotification(NotificationContent content) {
+        if (notificationBuilder == null) {
+            notificationBuilder = new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setOnlyAlertOnce(true)
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC);
+            // MediaStyle: shows media controls on lock screen and keeps OS from killing us
+            if (mediaSession != null) {
+                notificationBuilder.setStyle(new MediaStyleNotificationHelper.MediaStyle(mediaSession));
+            }
+        }
+        return notificationBuilder
+            .setContentTitle(content.title)
+            .setContentText(content.text)
+            .setOngoing(content.playing)
+            .setLargeIcon(content.artwork)
+            .build();
+    }
+
+    private void markNotificationPosted(NotificationContent content) {
+        postedNotification = content;
+        notificationPostedAtMs = SystemClock.elapsedRealtime();
+        playerHandler.removeCallbacks(notificationUpdater);
+    }
+
+    /**
+     * Repost the notification if its content changed, at most once per NOTIFICATION_MIN_INTERVAL_MS:
+     * a change inside the interval is posted when it ends, with whatever is current by then.
+     */
     private void updateNotification() {
+        if (stopped) return;
+        NotificationContent content = currentNotificationContent();
+        if (content.equals(postedNotification)) return;
+        long waitMs = notificationPostedAtMs + NOTIFICATION_MIN_INTERVAL_MS - SystemClock.elapsedRealtime();
+        if (waitMs > 0) {
+            playerHandler.removeCallbacks(notificationUpdater);
+            playerHandler.postDelayed(notificationUpdater, waitMs);
+            return;
+        }
         NotificationManager nm = getSystemService(NotificationManager.class);
         if (nm != null) {
-            nm.notify(NOTIFICATION_ID, buildNotification());
+            nm.notify(NOTIFICATION_ID, buildNotification(content));
+            markNotificationPosted(content);
         }
     }
 
@@ -502,31 +1116,32 @@ public class BackgroundAudioService extends Service {
         }
     }
 
+    /**
+     * Publish the current status: handed to in-process listeners (the plugin) as an immutable
+     * snapshot, or broadcast as ACTION_STATUS when nobody in this process listens.
+     */
     private void broadcastStatus(@Nullable String error) {
-        Intent status = new Intent(BackgroundAudioPlugin.ACTION_STATUS);
+        AudioStatus status = buildStatus(error);
+        lastStatus = status;
+        if (!AudioStatusBus.publish(status)) {
+            sendBroadcast(status.toIntent(getPackageName()));
+        }
+    }
+
+    private AudioStatus buildStatus(@Nullable String error) {
         boolean playing = player != null && player.isPlaying();
         int state = player != null ? player.getPlaybackState() : Player.STATE_IDLE;
 
-        boolean resolving = resolvingIndex == currentIndex && currentIndex >= 0;
         boolean playWhenReady = player != null && player.getPlayWhenReady();
         long playerDur = player != null ? player.getDuration() : C.TIME_UNSET;
         long effectiveDur = (playerDur != C.TIME_UNSET && playerDur > 0) ? playerDur : hintDurationMs;
         long pos = player != null ? player.getCurrentPosition() : 0;
         if (pos < 0) pos = 0;
-        status.putExtra("playing", playing);
-        status.putExtra("playWhenReady", playWhenReady);
-        status.putExtra("buffering", state == Player.STATE_BUFFERING || resolving);
-        status.putExtra("positionMs", pos);
-        status.putExtra("durationMs", Math.max(0, effectiveDur));
-        status.putExtra("index", currentIndex);
-        status.putExtra("hasNext", currentIndex >= 0 && currentIndex < rawPlaylist.size() - 1);
-        status.putExtra("hasPrev", currentIndex > 0);
-        String currentRaw = currentIndex >= 0 && currentIndex < rawPlaylist.size() ? rawPlaylist.get(currentIndex) : null;
-        String currentResolved = currentIndex >= 0 && currentIndex < resolvedCache.size() ? resolvedCache.get(currentIndex) : null;
-        status.putExtra("currentUrl", currentResolved != null ? currentResolved : currentRaw);
-        status.putExtra("title", currentTitle);
-        status.putExtra("artist", currentArtist);
-        status.putExtra("playbackState", playbackStateName(state));
+        PlaylistSnapshot p = playlist;
+        String currentRaw = p.currentSource();
+        StreamUrlResolver.ResolveResult currentResult = currentRaw != null ? openedResults.get(currentRaw) : null;
+        if (currentResult == null) currentResult = p.resolvedAt(p.currentIndex);
+        String currentResolved = currentResult != null ? currentResult.playableUrl : null;
         // JS-friendly state string. Use playWhenReady (user intent) over isPlaying
         // so brief audio-focus dips don't flip UI to "paused" while user is listening.
         String stateStr;
@@ -537,15 +1152,26 @@ public class BackgroundAudioService extends Service {
             case Player.STATE_ENDED: stateStr = "ended"; break;
             default: stateStr = "idle";
         }
-        status.putExtra("state", stateStr);
-        if (error != null) {
-            status.putExtra("error", error);
-        }
-
-        // Explicit package targeting: ensures broadcast is delivered to our app's receiver
-        // even with Android 14+ stricter broadcast routing rules.
-        status.setPackage(getPackageName());
-        sendBroadcast(status);
+        return new AudioStatus.Builder()
+            .playing(playing)
+            .playWhenReady(playWhenReady)
+            .buffering(state == Player.STATE_BUFFERING)
+            .positionMs(pos)
+            .durationMs(Math.max(0, effectiveDur))
+            .playbackSpeed(player != null ? player.getPlaybackParameters().speed : 1f)
+            .index(p.currentIndex)
+            .hasNext(p.hasNext())
+            .hasPrev(p.hasPrev())
+            .shuffle(p.shuffle != null)
+            .repeatMode(repeatModeName(p.repeatMode))
+            .currentUrl(currentResolved != null ? currentResolved : currentRaw)
+            .title(currentTitle)
+            .artist(currentArtist)
+            .state(stateStr)
+            .playbackState(playbackStateName(state))
+            .bufferProfile(bufferPolicy.getProfile().name().toLowerCase(Locale.US))
+            .error(error)
+            .build();
     }
 
     private String inferMimeType(String url) {
@@ -565,67 +1191,16 @@ public class BackgroundAudioService extends Service {
         return value == null || value.isEmpty() ? fallback : value;
     }
 
-    // Probe duration via MediaMetadataRetriever using a FileDescriptor (required for
-    // content:// URIs under Scoped Storage — (Context, Uri) variant silently fails).
-    private long mediaMetadataDuration(android.net.Uri uri) {
-        android.os.ParcelFileDescriptor pfd = null;
-        android.media.MediaMetadataRetriever mmr = null;
-        try {
-            pfd = getContentResolver().openFileDescriptor(uri, "r");
-            if (pfd == null) return 0;
-            mmr = new android.media.MediaMetadataRetriever();
-            mmr.setDataSource(pfd.getFileDescriptor());
-            String d = mmr.extractMetadata(android.media.MediaMetadataRetriever.METADATA_KEY_DURATION);
-            if (d != null) {
-                long ms = Long.parseLong(d);
-                Log.i(TAG, "mediaMetadataDuration → " + ms + "ms");
-                return ms;
-            }
-        } catch (Exception e) {
-            Log.w(TAG, "mediaMetadataDuration failed: " + e.getClass().getSimpleName() + ": " + e.getMessage());
-        } finally {
-            if (mmr != null) try { mmr.release(); } catch (Exception ignored) {}
-            if (pfd != null) try { pfd.close(); } catch (Exception ignored) {}
-        }
-        return 0;
-    }
-
-    private long mediaPlayerDuration(android.net.Uri uri) {
-        android.os.ParcelFileDescriptor pfd = null;
-        android.media.MediaPlayer mediaPlayer = null;
-        try {
-            pfd = getContentResolver().openFileDescriptor(uri, "r");
-            if (pfd == null) return 0;
-            mediaPlayer = new android.media.MediaPlayer();
-            mediaPlayer.setDataSource(pfd.getFileDescriptor());
-            mediaPlayer.prepare();
-            long ms = mediaPlayer.getDuration();
-            if (ms > 0) {
-                Log.i(TAG, "mediaPlayerDuration -> " + ms + "ms");
-                return ms;
-            }
-        } catch (Exception e) {
-            Log.w(TAG, "mediaPlayerDuration failed: " + e.getClass().getSimpleName() + ": " + e.getMessage());
-        } finally {
-            if (mediaPlayer != null) try { mediaPlayer.release(); } catch (Exception ignored) {}
-            if (pfd != null) try { pfd.close(); } catch (Exception ignored) {}
-        }
-        return 0;
-    }
-
-    private long queryContentDuration(android.net.Uri uri) {
-        try (android.database.Cursor c = getContentResolver().query(
-                uri,
-                new String[]{android.provider.MediaStore.Audio.Media.DURATION},
-                null, null, null)) {
-            if (c != null && c.moveToFirst()) {
-                int idx = c.getColumnIndex(android.provider.MediaStore.Audio.Media.DURATION);
-                if (idx >= 0) return c.getLong(idx);
-            }
-        } catch (Exception e) {
-            Log.w(TAG, "queryContentDuration failed: " + e.getMessage());
+    /** JS name of a Player.REPEAT_MODE_* value. */
+    static String repeatModeName(int mode) {
+        switch (mode) {
+            case Player.REPEAT_MODE_ONE:
+                return "one";
+            case Player.REPEAT_MODE_ALL:
+                return "all";
+            default:
+                return "off";
         }
-        return 0;
     }
 
     private String playbackStateName(int state) {
@@ -645,21 +1220,135 @@ public class BackgroundAudioService extends Service {
 
     @Override
     public void onDestroy() {
-        progressHandler.removeCallbacks(progressTicker);
-        if (mediaSession != null) {
-            mediaSession.release();
-            mediaSession = null;
-        }
-        if (player != null) {
-            player.release();
-            player = null;
-        }
+        resolveScheduler.shutdown();
+        // Released behind the commands already queued; the thread ends once they have run
+        playerHandler.post(() -> {
+            playerHandler.removeCallbacks(progressTicker);
+            playerHandler.removeCallbacks(expiryRefresher);
+            playerHandler.removeCallbacks(notificationUpdater);
+            cancelPlaylistWarmup();
+            cancelArtworkLoad();
+            cancelDurationProbe();
+            if (nextTrackPrefetcher != null) nextTrackPrefetcher.shutdown();
+            if (mediaSession != null) {
+                mediaSession.release();
+                mediaSession = null;
+            }
+            if (player != null) {
+                player.release();
+                player = null;
+            }
+        });
+        playerThread.quitSafely();
         super.onDestroy();
     }
 
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
+        return controlBinder;
+    }
+
+    /**
+     * In-process control path for the plugin, which binds without BIND_AUTO_CREATE (binding never
+     * starts the service). Commands go into the same queue as onStartCommand's, skipping the
+     * startService → system_server → onStartCommand round trip. All methods are callable from any thread.
+     */
+    public final class ControlBinder extends Binder {
+        /** Queue a command (same Intent as the startService path) behind everything received so far. */
+        public void send(Intent command) {
+            enqueueCommand(command, "binder");
+        }
+
+        /**
+         * Highest EXTRA_SEQ received on either path. The plugin keeps using Intents until this
+         * reaches the last one it sent that way, so a bound command can't overtake it.
+         */
+        public long receivedSeq() {
+            return receivedSeq;
+        }
+
+        /** Last published status (no player-thread hop), or null before the first one. */
+        @Nullable
+        public AudioStatus status() {
+            return lastStatus;
+        }
+    }
+
+    /** A received command and the path it came by (for ControlLatency). */
+    private static final class Command {
+        final Intent intent;
+        final String path;
+
+        Command(Intent intent, String path) {
+            this.intent = intent;
+            this.path = path;
+        }
+    }
+
+    /**
+     * Append a command to the queue the player thread drains in arrival order. A command of the same
+     * kind as the queue's last, not yet run one replaces it (seek, rate, pause / resume: latest wins)
+     * or adds to it (next / prev steps); anything in between keeps both, so order is never changed.
+     */
+    private void enqueueCommand(Intent intent, String path) {
+        synchronized (commands) {
+            receivedSeq = Math.max(receivedSeq, intent.getLongExtra(BackgroundAudioPlugin.EXTRA_SEQ, 0));
+            Command last = commands.peekLast();
+            if (last != null && coalesce(last.intent, intent)) {
+                commands.pollLast();
+            }
+            commands.addLast(new Command(intent, path));
+            if (!drainScheduled) {
+                drainScheduled = true;
+                playerHandler.post(this::drainCommands);
+            }
+        }
+    }
+
+    /** Whether next may stand in for queued (folding skip steps into next). */
+    private static boolean coalesce(Intent queued, Intent next) {
+        String kind = commandKind(queued.getAction());
+        if (kind == null || !kind.equals(commandKind(next.getAction()))) return false;
+        if ("skip".equals(kind)) next.putExtra(BackgroundAudioPlugin.EXTRA_STEPS, skipSteps(queued) + skipSteps(next));
+        return true;
+    }
+
+    /** Commands that coalesce with an adjacent one of the same kind; null for the rest. */
+    @Nullable
+    private static String commandKind(String action) {
+        switch (action) {
+            case BackgroundAudioPlugin.ACTION_SEEK:
+                return "seek";
+            case BackgroundAudioPlugin.ACTION_RATE:
+                return "rate";
+            case BackgroundAudioPlugin.ACTION_PAUSE:
+            case BackgroundAudioPlugin.ACTION_RESUME:
+                return "playWhenReady";
+            case BackgroundAudioPlugin.ACTION_NEXT:
+            case BackgroundAudioPlugin.ACTION_PREV:
+                return "skip";
+            default:
+                return null;
+        }
+    }
+
+    private static int skipSteps(Intent intent) {
+        int single = BackgroundAudioPlugin.ACTION_NEXT.equals(intent.getAction()) ? 1 : -1;
+        return intent.getIntExtra(BackgroundAudioPlugin.EXTRA_STEPS, single);
+    }
+
+    private void drainCommands() {
+        while (true) {
+            Command command;
+            synchronized (commands) {
+                command = commands.pollFirst();
+                if (command == null) {
+                    drainScheduled = false;
+                    return;
+                }
+            }
+            handleCommand(command);
+        }
     }
 }
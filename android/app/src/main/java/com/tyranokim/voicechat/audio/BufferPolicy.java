@@ -0,0 +1,118 @@
+package com.tyranokim.voicechat.audio;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.exoplayer.upstream.BandwidthMeter;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+
+/**
+ * Chooses the AdaptiveLoadControl profile from measured throughput (the player's bandwidth meter)
+ * and recent rebuffers, unless a profile was selected explicitly.
+ *
+ * In auto mode:
+ *  - live item → LOW_LATENCY
+ *  - weak link (rebuffered within REBUFFER_WINDOW_MS, or estimate under WEAK_BPS) → DEEP: biggest cushion
+ *  - strong link (estimate over STRONG_BPS) → DEEP: load in bursts, radio idle in between; with fast
+ *    start, so starting and seeking wait only for LOW_LATENCY's 0.5s instead of DEEP's 2.5s
+ *  - in between, or no estimate yet → BALANCED
+ *
+ * Called on the player's application thread (BackgroundAudioService's player thread).
+ */
+@UnstableApi
+public class BufferPolicy {
+    private static final String TAG = "BufferPolicy";
+
+    public static final String MODE_AUTO = "auto";
+    private static final long REBUFFER_WINDOW_MS = 5 * 60_000L;
+    private static final long WEAK_BPS = 512_000;
+    private static final long STRONG_BPS = 2_000_000;
+    // BUFFERING this soon after a seek / track change is the player loading, not a rebuffer
+    private static final long SEEK_GRACE_MS = 2_000;
+
+    private final AdaptiveLoadControl loadControl;
+    private final BandwidthMeter bandwidthMeter;
+    private final ArrayDeque<Long> rebufferTimesMs = new ArrayDeque<>();
+    // null = auto
+    @Nullable private AdaptiveLoadControl.Profile fixedProfile;
+    private long lastSeekMs = 0;
+
+    public BufferPolicy(AdaptiveLoadControl loadControl, BandwidthMeter bandwidthMeter) {
+        this.loadControl = loadControl;
+        this.bandwidthMeter = bandwidthMeter;
+    }
+
+    /**
+     * Select a profile by name ("low_latency", "balanced", "deep") or "auto".
+     * Returns false for an unknown name.
+     */
+    public boolean setMode(String mode) {
+        if (MODE_AUTO.equalsIgnoreCase(mode)) {
+            fixedProfile = null;
+        } else {
+            try {
+                fixedProfile = AdaptiveLoadControl.Profile.valueOf(mode.toUpperCase(Locale.US));
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        }
+        Log.i(TAG, "Buffer mode: " + mode);
+        return true;
+    }
+
+    public String getMode() {
+        return fixedProfile != null ? fixedProfile.name().toLowerCase(Locale.US) : MODE_AUTO;
+    }
+
+    public AdaptiveLoadControl.Profile getProfile() {
+        return loadControl.getProfile();
+    }
+
+    /** Seek or track change: the BUFFERING that follows is expected. */
+    public void onSeek() {
+        lastSeekMs = SystemClock.elapsedRealtime();
+    }
+
+    /** Player went READY → BUFFERING while it was supposed to play. */
+    public void onBufferingWhilePlaying() {
+        long now = SystemClock.elapsedRealtime();
+        if (now - lastSeekMs < SEEK_GRACE_MS) return;
+        rebufferTimesMs.addLast(now);
+        Log.i(TAG, "Rebuffer (" + rebufferTimesMs.size() + " recent), estimate " + bandwidthMeter.getBitrateEstimate() / 1000 + "kbps");
+    }
+
+    /** Re-evaluate and apply the profile for the current item. */
+    public void update(boolean live) {
+        long now = SystemClock.elapsedRealtime();
+        while (!rebufferTimesMs.isEmpty() && now - rebufferTimesMs.peekFirst() > REBUFFER_WINDOW_MS) {
+            rebufferTimesMs.removeFirst();
+        }
+        AdaptiveLoadControl.Profile profile = fixedProfile != null ? fixedProfile : autoProfile(live);
+        boolean fastStart = fixedProfile == null && !live && rebufferTimesMs.isEmpty()
+            && bandwidthMeter.getBitrateEstimate() >= STRONG_BPS;
+        if (fastStart != loadControl.isFastStart()) {
+            Log.i(TAG, "Fast start " + (fastStart ? "on" : "off"));
+            loadControl.setFastStart(fastStart);
+        }
+        if (profile != loadControl.getProfile()) {
+            Log.i(TAG, "Buffer profile " + loadControl.getProfile() + " → " + profile
+                + " (estimate " + bandwidthMeter.getBitrateEstimate() / 1000 + "kbps, "
+                + rebufferTimesMs.size() + " recent rebuffers)");
+            loadControl.setProfile(profile);
+        }
+    }
+
+    private AdaptiveLoadControl.Profile autoProfile(boolean live) {
+        if (live) return AdaptiveLoadControl.Profile.LOW_LATENCY;
+        long bps = bandwidthMeter.getBitrateEstimate();
+        if (!rebufferTimesMs.isEmpty()) return AdaptiveLoadControl.Profile.DEEP;
+        // DefaultBandwidthMeter reports its initial (network-type) guess until it has samples
+        if (bps > 0 && bps < WEAK_BPS) return AdaptiveLoadControl.Profile.DEEP;
+        if (bps >= STRONG_BPS) return AdaptiveLoadControl.Profile.DEEP;
+        return AdaptiveLoadControl.Profile.BALANCED;
+    }
+}
@@ -0,0 +1,39 @@
+package com.tyranokim.voicechat.audio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cooperative cancellation signal for background audio work (resolves, prefetches).
+ * Work checks isCancelled() or registers an onCancel callback to abort blocking waits / HTTP calls.
+ */
+public final class CancellationToken {
+    private boolean cancelled = false;
+    private List<Runnable> listeners = new ArrayList<>();
+
+    public void cancel() {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (cancelled) return;
+            cancelled = true;
+            toRun = listeners;
+            listeners = null;
+        }
+        for (Runnable r : toRun) r.run();
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** Run listener on cancel(), or right away if already cancelled. */
+    public void onCancel(Runnable listener) {
+        synchronized (this) {
+            if (!cancelled) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+}
@@ -0,0 +1,82 @@
+package com.tyranokim.voicechat.audio;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Consecutive-failure circuit breaker.
+ *
+ *  - CLOSED: requests flow; failureThreshold failures in a row → OPEN
+ *  - OPEN: requests are refused for openMs (callers go straight to their fallback)
+ *  - HALF_OPEN: one trial request is let through; success → CLOSED, failure → OPEN again
+ */
+public class CircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMs;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAtMs = 0;
+    private boolean trialInFlight = false;
+
+    public CircuitBreaker(String name, int failureThreshold, long openMs) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openMs = openMs;
+    }
+
+    /** True if the caller may issue a request now; false means use the fallback. */
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN && elapsedRealtime() - openedAtMs >= openMs) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+            Log.i(name, "Circuit half-open — letting one trial request through");
+        }
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (trialInFlight) return false;
+                trialInFlight = true;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) Log.i(name, "Circuit closed");
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        trialInFlight = false;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                Log.w(name, "Circuit open after " + consecutiveFailures + " failures — using fallback for " + openMs + "ms");
+            }
+            state = State.OPEN;
+            openedAtMs = elapsedRealtime();
+        }
+    }
+
+    /** An outcome that says nothing about the service (e.g. the caller gave up waiting): frees a half-open trial. */
+    public synchronized void recordInconclusive() {
+        trialInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /** Monotonic ms clock; overridden by tests. */
+    long elapsedRealtime() {
+        return SystemClock.elapsedRealtime();
+    }
+}
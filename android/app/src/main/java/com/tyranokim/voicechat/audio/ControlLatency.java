@@ -0,0 +1,45 @@
+package com.tyranokim.voicechat.audio;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Time from a control leaving the plugin to it running on the player thread, per command path
+ * ("binder": ControlBinder, "intent": startService → onStartCommand). Logged as count / mean / max
+ * every LOG_EVERY samples, so the two paths can be compared on a device with logcat.
+ */
+final class ControlLatency {
+    private static final String TAG = "ControlLatency";
+    private static final int LOG_EVERY = 20;
+
+    private static final class Stats {
+        long count;
+        long totalMs;
+        long maxMs;
+    }
+
+    private static final Map<String, Stats> stats = new HashMap<>();
+
+    private ControlLatency() {}
+
+    /** Record one control on path, issued at sentAtMs (SystemClock.elapsedRealtime()). */
+    static synchronized void record(String path, long sentAtMs) {
+        long latencyMs = Math.max(0, SystemClock.elapsedRealtime() - sentAtMs);
+        Stats s = stats.get(path);
+        if (s == null) {
+            s = new Stats();
+            stats.put(path, s);
+        }
+        s.count++;
+        s.totalMs += latencyMs;
+        s.maxMs = Math.max(s.maxMs, latencyMs);
+        if (s.count % LOG_EVERY == 0) {
+            Log.i(TAG, String.format(Locale.US, "%s: n=%d mean=%.1fms max=%dms",
+                path, s.count, (double) s.totalMs / s.count, s.maxMs));
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.tyranokim.voicechat.audio;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.media.MediaMetadataRetriever;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.ParcelFileDescriptor;
+import android.provider.MediaStore;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Duration of local (content://) tracks, probed off the main thread and remembered on disk.
+ *
+ *  - probing runs on AudioTaskExecutor: MediaStore DURATION first, then MediaMetadataRetriever,
+ *    then MediaPlayer.prepare() (slow: parses the file), so playback never waits for it
+ *  - results are cached by URI + size + last-modified, so each file version is probed once;
+ *    an edited / replaced file gets a new key
+ *  - LRU eviction keeps at most MAX_ENTRIES files; the cache file is rewritten after each new probe
+ */
+public class DurationProbe {
+    private static final String TAG = "DurationProbe";
+    private static final String FILE_NAME = "duration_cache.json";
+    private static final int MAX_ENTRIES = 2000;
+
+    public interface Callback {
+        /** Called on the caller's handler with the probed duration (> 0). Not called if probing failed. */
+        void onDuration(long durationMs);
+    }
+
+    private static DurationProbe instance;
+
+    public static synchronized DurationProbe getInstance(Context context) {
+        if (instance == null) {
+            Context app = context.getApplicationContext();
+            instance = new DurationProbe(app.getContentResolver(), new File(app.getCacheDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    private final ContentResolver contentResolver;
+    private final File file;
+    // accessOrder=true → iteration order is least-recently-used first
+    private final LinkedHashMap<String, Long> durations = new LinkedHashMap<String, Long>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private boolean loaded = false;
+
+    private DurationProbe(ContentResolver contentResolver, File file) {
+        this.contentResolver = contentResolver;
+        this.file = file;
+    }
+
+    /**
+     * Probe uri in the background, delivering on handler's thread; cancel the token to drop the
+     * result (e.g. the track changed).
+     */
+    public CancellationToken probeAsync(Uri uri, Handler handler, Callback callback) {
+        return AudioTaskExecutor.getInstance().submit("duration probe", token -> {
+            long durationMs = probe(uri);
+            if (durationMs > 0 && !token.isCancelled()) {
+                handler.post(() -> {
+                    if (!token.isCancelled()) callback.onDuration(durationMs);
+                });
+            }
+        });
+    }
+
+    /** Cached or freshly probed duration of uri in ms; 0 if unknown. Blocking. */
+    public long probe(Uri uri) {
+        String key = cacheKey(uri);
+        Long cached = key != null ? cachedDuration(key) : null;
+        if (cached != null) {
+            Log.d(TAG, "Cached duration " + cached + "ms for " + uri);
+            return cached;
+        }
+        long probed = queryContentDuration(uri);
+        if (probed <= 0) probed = mediaMetadataDuration(uri);
+        if (probed <= 0) probed = mediaPlayerDuration(uri);
+        Log.i(TAG, "Probed duration " + probed + "ms for " + uri);
+        if (key != null && probed > 0) store(key, probed);
+        return probed;
+    }
+
+    /** uri|size|lastModified, or null when the provider reports neither (nothing to tell versions apart). */
+    @Nullable
+    private String cacheKey(Uri uri) {
+        long size = -1;
+        long modified = -1;
+        try (Cursor c = contentResolver.query(uri, null, null, null, null)) {
+            if (c != null && c.moveToFirst()) {
+                int sizeIdx = c.getColumnIndex(OpenableColumns.SIZE);
+                int modifiedIdx = c.getColumnIndex(MediaStore.MediaColumns.DATE_MODIFIED);
+                if (sizeIdx >= 0 && !c.isNull(sizeIdx)) size = c.getLong(sizeIdx);
+                if (modifiedIdx >= 0 && !c.isNull(modifiedIdx)) modified = c.getLong(modifiedIdx);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Metadata query failed for " + uri + ": " + e.getMessage());
+        }
+        if (size < 0 && modified < 0) return null;
+        return uri + "|" + size + "|" + modified;
+    }
+
+    @Nullable
+    private synchronized Long cachedDuration(String key) {
+        ensureLoaded();
+        return durations.get(key);
+    }
+
+    private void store(String key, long durationMs) {
+        JSONArray arr = new JSONArray();
+        synchronized (this) {
+            ensureLoaded();
+            durations.put(key, durationMs);
+            try {
+                for (Map.Entry<String, Long> e : durations.entrySet()) {
+                    arr.put(new JSONObject().put("key", e.getKey()).put("durationMs", e.getValue()));
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to encode duration cache: " + e.getMessage());
+                return;
+            }
+        }
+        // Two probes may finish together: one writer at a time on the tmp file
+        synchronized (file) {
+            File tmp = new File(file.getPath() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                out.write(arr.toString().getBytes(StandardCharsets.UTF_8));
+                out.getFD().sync();
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to save duration cache: " + e.getMessage());
+                return;
+            }
+            if (!tmp.renameTo(file)) {
+                Log.w(TAG, "Failed to replace " + file.getName());
+            }
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+        if (!file.exists()) return;
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] buf = new byte[(int) file.length()];
+            int off = 0;
+            while (off < buf.length) {
+                int n = in.read(buf, off, buf.length - off);
+                if (n < 0) break;
+                off += n;
+            }
+            JSONArray arr = new JSONArray(new String(buf, 0, off, StandardCharsets.UTF_8));
+            // File is written LRU-first, so re-inserting in order restores the access order
+            for (int i = 0; i < arr.length(); i++) {
+                JSONObject o = arr.optJSONObject(i);
+                if (o == null) continue;
+                String key = o.optString("key", "");
+                long durationMs = o.optLong("durationMs", 0);
+                if (!key.isEmpty() && durationMs > 0) durations.put(key, durationMs);
+            }
+            Log.i(TAG, "Loaded " + durations.size() + " cached durations");
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to load duration cache: " + e.getMessage());
+        }
+    }
+
+    private long queryContentDuration(Uri uri) {
+        try (Cursor c = contentResolver.query(uri, new String[]{MediaStore.Audio.Media.DURATION}, null, null, null)) {
+            if (c != null && c.moveToFirst()) {
+                int idx = c.getColumnIndex(MediaStore.Audio.Media.DURATION);
+                if (idx >= 0) return c.getLong(idx);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "queryContentDuration failed: " + e.getMessage());
+        }
+        return 0;
+    }
+
+    // Probe duration via MediaMetadataRetriever using a FileDescriptor (required for
+    // content:// URIs under Scoped Storage — (Context, Uri) variant silently fails).
+    private long mediaMetadataDuration(Uri uri) {
+        ParcelFileDescriptor pfd = null;
+        MediaMetadataRetriever mmr = null;
+        try {
+            pfd = contentResolver.openFileDescriptor(uri, "r");
+            if (pfd == null) return 0;
+            mmr = new MediaMetadataRetriever();
+            mmr.setDataSource(pfd.getFileDescriptor());
+            String d = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+            if (d != null) return Long.parseLong(d);
+        } catch (Exception e) {
+            Log.w(TAG, "mediaMetadataDuration failed: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+        } finally {
+            if (mmr != null) try { mmr.release(); } catch (Exception ignored) {}
+            if (pfd != null) try { pfd.close(); } catch (Exception ignored) {}
+        }
+        return 0;
+    }
+
+    private long mediaPlayerDuration(Uri uri) {
+        ParcelFileDescriptor pfd = null;
+        MediaPlayer mediaPlayer = null;
+        try {
+            pfd = contentResolver.openFileDescriptor(uri, "r");
+            if (pfd == null) return 0;
+            mediaPlayer = new MediaPlayer();
+            mediaPlayer.setDataSource(pfd.getFileDescriptor());
+            mediaPlayer.prepare();
+            long ms = mediaPlayer.getDuration();
+            if (ms > 0) return ms;
+        } catch (Exception e) {
+            Log.w(TAG, "mediaPlayerDuration failed: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+        } finally {
+            if (mediaPlayer != null) try { mediaPlayer.release(); } catch (Exception ignored) {}
+            if (pfd != null) try { pfd.close(); } catch (Exception ignored) {}
+        }
+        return 0;
+    }
+}
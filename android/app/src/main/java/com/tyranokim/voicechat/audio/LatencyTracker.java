@@ -0,0 +1,36 @@
+package com.tyranokim.voicechat.audio;
+
+import java.util.Arrays;
+
+/**
+ * Sliding window of recent latencies (ms) with percentile lookup.
+ * Used by StreamUrlResolver to time its hedge request at the observed p95.
+ */
+public class LatencyTracker {
+    private final long[] samples;
+    private int count = 0;
+    private int next = 0;
+
+    public LatencyTracker(int windowSize) {
+        samples = new long[windowSize];
+    }
+
+    public synchronized void record(long latencyMs) {
+        samples[next] = latencyMs;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) count++;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /** Percentile (0-100) of the recorded samples, or fallbackMs while there are fewer than minSamples. */
+    public synchronized long percentile(int p, int minSamples, long fallbackMs) {
+        if (count < Math.max(1, minSamples)) return fallbackMs;
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int idx = (int) Math.ceil(p / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, idx))];
+    }
+}
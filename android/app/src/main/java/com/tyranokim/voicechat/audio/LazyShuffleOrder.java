@@ -0,0 +1,384 @@
+package com.tyranokim.voicechat.audio;
+
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.exoplayer.source.ShuffleOrder;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Shuffle order that is computed, not stored: position ↔ index goes through a keyed Feistel
+ * permutation over the next power-of-four domain, cycle-walking values that fall outside
+ * [0, length). Any step of the order is O(1) time and the order costs O(1) memory, so shuffling a
+ * 50k-item queue allocates nothing (DefaultShuffleOrder materializes two int[length] tables).
+ *
+ *  - position 0 is firstIndex, so enabling shuffle keeps the current track and shuffles the rest
+ *  - insert / remove / move keep the order of the items already there: each clone stacks an O(k)
+ *    layer (the k edited items) on its parent, new items take random positions; beyond
+ *    MAX_EDIT_DEPTH layers the order is flattened into position ↔ index tables
+ *  - the service still re-applies its own order after it edits the player's items, keeping player
+ *    and PlaylistSnapshot in step
+ */
+@UnstableApi
+public final class LazyShuffleOrder implements ShuffleOrder {
+    private static final int ROUNDS = 4;
+    private static final int MAX_EDIT_DEPTH = 16;
+    private static final Random seeds = new Random();
+
+    /** position ↔ index for the positions / indices in [0, length). */
+    private interface Mapping {
+        int indexAt(int position);
+
+        int positionOf(int index);
+    }
+
+    private final int length;
+    private final Mapping mapping;
+    // Edit layers above the last Feistel permutation / table
+    private final int depth;
+
+    /** Random order over length items starting with firstIndex (-1: any). */
+    public LazyShuffleOrder(int length, int firstIndex) {
+        this(length, seeds.nextLong(), firstIndex);
+    }
+
+    public LazyShuffleOrder(int length, long seed, int firstIndex) {
+        this(length, new Feistel(length, seed, firstIndex), 0);
+    }
+
+    private LazyShuffleOrder(int length, Mapping mapping, int depth) {
+        this.length = length;
+        this.mapping = mapping;
+        this.depth = depth;
+    }
+
+    /** Item index played at position; C.INDEX_UNSET outside [0, length). */
+    public int indexAt(int position) {
+        if (position < 0 || position >= length) return C.INDEX_UNSET;
+        return mapping.indexAt(position);
+    }
+
+    /** Position of index in the play order; C.INDEX_UNSET outside [0, length). */
+    public int positionOf(int index) {
+        if (index < 0 || index >= length) return C.INDEX_UNSET;
+        return mapping.positionOf(index);
+    }
+
+    @Override
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public int getNextIndex(int index) {
+        int position = positionOf(index);
+        return position != C.INDEX_UNSET && position + 1 < length ? indexAt(position + 1) : C.INDEX_UNSET;
+    }
+
+    @Override
+    public int getPreviousIndex(int index) {
+        int position = positionOf(index);
+        return position > 0 ? indexAt(position - 1) : C.INDEX_UNSET;
+    }
+
+    @Override
+    public int getLastIndex() {
+        return length > 0 ? indexAt(length - 1) : C.INDEX_UNSET;
+    }
+
+    @Override
+    public int getFirstIndex() {
+        return length > 0 ? indexAt(0) : C.INDEX_UNSET;
+    }
+
+    @Override
+    public LazyShuffleOrder cloneAndInsert(int insertionIndex, int insertionCount) {
+        return cloneAndInsert(insertionIndex, insertionCount, 0);
+    }
+
+    /**
+     * This order with insertionCount new items at insertionIndex (indices from there shift up),
+     * placed at random positions at or after firstPosition; the other items keep their order.
+     */
+    public LazyShuffleOrder cloneAndInsert(int insertionIndex, int insertionCount, int firstPosition) {
+        if (insertionCount <= 0) return this;
+        int from = Math.max(0, Math.min(length, insertionIndex));
+        int lowest = Math.max(0, Math.min(length, firstPosition));
+        return layered(length + insertionCount, new Inserted(mapping, from, insertionCount,
+            randomPositions(lowest, length + insertionCount, insertionCount), seeds));
+    }
+
+    @Override
+    public LazyShuffleOrder cloneAndRemove(int indexFrom, int indexToExclusive) {
+        int from = Math.max(0, Math.min(length, indexFrom));
+        int to = Math.max(from, Math.min(length, indexToExclusive));
+        if (to == from) return this;
+        if (to - from == length) return cloneAndClear();
+        int[] removed = new int[to - from];
+        for (int i = from; i < to; i++) removed[i - from] = mapping.positionOf(i);
+        Arrays.sort(removed);
+        return layered(length - removed.length, new Removed(mapping, from, removed));
+    }
+
+    /**
+     * This order after Player.moveMediaItems(indexFrom, indexToExclusive, newIndexFrom): the moved
+     * items keep their positions in the order, only their indices change.
+     */
+    public LazyShuffleOrder cloneAndMove(int indexFrom, int indexToExclusive, int newIndexFrom) {
+        int from = Math.max(0, Math.min(length, indexFrom));
+        int count = Math.max(0, Math.min(length, indexToExclusive) - from);
+        int to = Math.max(0, Math.min(length - count, newIndexFrom));
+        if (count == 0 || to == from) return this;
+        return layered(length, new Moved(mapping, from, count, to));
+    }
+
+    @Override
+    public LazyShuffleOrder cloneAndClear() {
+        return new LazyShuffleOrder(0, -1);
+    }
+
+    private LazyShuffleOrder layered(int newLength, Mapping layer) {
+        if (depth + 1 <= MAX_EDIT_DEPTH) return new LazyShuffleOrder(newLength, layer, depth + 1);
+        int[] indices = new int[newLength];
+        int[] positions = new int[newLength];
+        for (int position = 0; position < newLength; position++) {
+            int index = layer.indexAt(position);
+            indices[position] = index;
+            positions[index] = position;
+        }
+        return new LazyShuffleOrder(newLength, new Table(indices, positions), 0);
+    }
+
+    /** count distinct sorted values in [lowest, end) (Floyd's sampling: O(count)). */
+    private static int[] randomPositions(int lowest, int end, int count) {
+        int range = end - lowest;
+        Set<Integer> chosen = new HashSet<>(count * 4 / 3 + 1);
+        for (int j = range - count; j < range; j++) {
+            int t = seeds.nextInt(j + 1);
+            chosen.add(chosen.contains(t) ? j : t);
+        }
+        int[] positions = new int[count];
+        int k = 0;
+        for (int value : chosen) positions[k++] = lowest + value;
+        Arrays.sort(positions);
+        return positions;
+    }
+
+    /** Number of values in sorted that are ≤ value. */
+    private static int countAtMost(int[] sorted, int value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] <= value) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /** The index the item at index has after moving count items from from to to. */
+    private static int moved(int index, int from, int count, int to) {
+        if (index >= from && index < from + count) return to + index - from;
+        int rest = index < from ? index : index - count;
+        return rest >= to ? rest + count : rest;
+    }
+
+    /** New items at the given positions, in random order among themselves. */
+    private static final class Inserted implements Mapping {
+        private final Mapping parent;
+        private final int from;
+        private final int count;
+        // Sorted new positions; slot k holds new item from + itemAt[k]
+        private final int[] positions;
+        private final int[] itemAt;
+        private final int[] slotOf;
+        // positions[k] - k: how many old items precede slot k (non-decreasing)
+        private final int[] oldBefore;
+
+        Inserted(Mapping parent, int from, int count, int[] positions, Random random) {
+            this.parent = parent;
+            this.from = from;
+            this.count = count;
+            this.positions = positions;
+            itemAt = new int[count];
+            slotOf = new int[count];
+            oldBefore = new int[count];
+            for (int k = 0; k < count; k++) {
+                int j = random.nextInt(k + 1);
+                itemAt[k] = itemAt[j];
+                itemAt[j] = k;
+                oldBefore[k] = positions[k] - k;
+            }
+            for (int k = 0; k < count; k++) slotOf[itemAt[k]] = k;
+        }
+
+        @Override
+        public int indexAt(int position) {
+            int slot = Arrays.binarySearch(positions, position);
+            if (slot >= 0) return from + itemAt[slot];
+            int index = parent.indexAt(position - (-slot - 1));
+            return index >= from ? index + count : index;
+        }
+
+        @Override
+        public int positionOf(int index) {
+            if (index >= from && index < from + count) return positions[slotOf[index - from]];
+            int old = parent.positionOf(index >= from + count ? index - count : index);
+            return old + countAtMost(oldBefore, old);
+        }
+    }
+
+    /** Items [from, from + removed.length) gone; removed holds their (sorted) parent positions. */
+    private static final class Removed implements Mapping {
+        private final Mapping parent;
+        private final int from;
+        private final int[] removed;
+        // removed[j] - j: how many surviving items precede removed item j (non-decreasing)
+        private final int[] keptBefore;
+
+        Removed(Mapping parent, int from, int[] removed) {
+            this.parent = parent;
+            this.from = from;
+            this.removed = removed;
+            keptBefore = new int[removed.length];
+            for (int j = 0; j < removed.length; j++) keptBefore[j] = removed[j] - j;
+        }
+
+        @Override
+        public int indexAt(int position) {
+            int index = parent.indexAt(position + countAtMost(keptBefore, position));
+            return index >= from ? index - removed.length : index;
+        }
+
+        @Override
+        public int positionOf(int index) {
+            int old = parent.positionOf(index >= from ? index + removed.length : index);
+            return old - countAtMost(removed, old - 1);
+        }
+    }
+
+    private static final class Moved implements Mapping {
+        private final Mapping parent;
+        private final int from;
+        private final int count;
+        private final int to;
+
+        Moved(Mapping parent, int from, int count, int to) {
+            this.parent = parent;
+            this.from = from;
+            this.count = count;
+            this.to = to;
+        }
+
+        @Override
+        public int indexAt(int position) {
+            return moved(parent.indexAt(position), from, count, to);
+        }
+
+        @Override
+        public int positionOf(int index) {
+            return parent.positionOf(moved(index, to, count, from));
+        }
+    }
+
+    private static final class Table implements Mapping {
+        private final int[] indices;
+        private final int[] positions;
+
+        Table(int[] indices, int[] positions) {
+            this.indices = indices;
+            this.positions = positions;
+        }
+
+        @Override
+        public int indexAt(int position) {
+            return indices[position];
+        }
+
+        @Override
+        public int positionOf(int index) {
+            return positions[index];
+        }
+    }
+
+    private static final class Feistel implements Mapping {
+        private final int length;
+        private final int halfBits;
+        private final long halfMask;
+        private final int[] keys = new int[ROUNDS];
+        // Permutation slot of position 0
+        private final int offset;
+
+        Feistel(int length, long seed, int firstIndex) {
+            this.length = length;
+            int bits = Math.max(2, 64 - Long.numberOfLeadingZeros(Math.max(1, length - 1)));
+            halfBits = (bits + 1) / 2;
+            halfMask = (1L << halfBits) - 1;
+            Random random = new Random(seed);
+            for (int i = 0; i < ROUNDS; i++) keys[i] = random.nextInt();
+            offset = firstIndex >= 0 && firstIndex < length ? unpermute(firstIndex) : 0;
+        }
+
+        @Override
+        public int indexAt(int position) {
+            return permute((int) ((position + (long) offset) % length));
+        }
+
+        @Override
+        public int positionOf(int index) {
+            return Math.floorMod(unpermute(index) - offset, length);
+        }
+
+        private int permute(int x) {
+            long y = x;
+            do {
+                y = encrypt(y);
+            } while (y >= length);
+            return (int) y;
+        }
+
+        private int unpermute(int y) {
+            long x = y;
+            do {
+                x = decrypt(x);
+            } while (x >= length);
+            return (int) x;
+        }
+
+        private long encrypt(long value) {
+            long left = value >>> halfBits;
+            long right = value & halfMask;
+            for (int i = 0; i < ROUNDS; i++) {
+                long next = left ^ round(right, keys[i]);
+                left = right;
+                right = next;
+            }
+            return (left << halfBits) | right;
+        }
+
+        private long decrypt(long value) {
+            long left = value >>> halfBits;
+            long right = value & halfMask;
+            for (int i = ROUNDS - 1; i >= 0; i--) {
+                long previous = right ^ round(left, keys[i]);
+                right = left;
+                left = previous;
+            }
+            return (left << halfBits) | right;
+        }
+
+        // murmur3 finalizer: cheap, well-mixed round function
+        private long round(long half, int key) {
+            int h = (int) half * 0x9E3779B9 ^ key;
+            h ^= h >>> 16;
+            h *= 0x85EBCA6B;
+            h ^= h >>> 13;
+            h *= 0xC2B2AE35;
+            h ^= h >>> 16;
+            return h & halfMask;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.tyranokim.voicechat.audio;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.OptIn;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.database.StandaloneDatabaseProvider;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.TransferListener;
+import androidx.media3.datasource.cache.Cache;
+import androidx.media3.datasource.cache.CacheDataSource;
+import androidx.media3.datasource.cache.CacheEvictor;
+import androidx.media3.datasource.cache.CacheSpan;
+import androidx.media3.datasource.cache.CacheWriter;
+import androidx.media3.datasource.cache.SimpleCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Process-wide on-disk cache for VOD audio bytes (Media3 SimpleCache), so replays and seeks back
+ * in a track cost no network.
+ *
+ *  - Only DataSpecs with a key are cached: YouTube VOD by videoId and source path (CDN format or
+ *    proxy, set once the page URL is resolved) and plain HTTP files by URL; live HLS and local files
+ *    have no key and bypass the cache
+ *  - Least-recently-used spans are evicted beyond the size cap, which is persisted and adjustable
+ *    at runtime (applied on the next cache write)
+ */
+@OptIn(markerClass = UnstableApi.class)
+public class MediaCache {
+    private static final String TAG = "MediaCache";
+    private static final String DIR_NAME = "media_cache";
+    private static final String PREFS_NAME = "media_cache";
+    private static final String PREF_MAX_BYTES = "maxBytes";
+
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+    private static final long MIN_MAX_BYTES = 16L * 1024 * 1024;
+
+    private static MediaCache instance;
+
+    public static synchronized MediaCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new MediaCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private final SharedPreferences prefs;
+    private final LruEvictor evictor;
+    // SimpleCache locks its directory: exactly one instance per process
+    private final SimpleCache cache;
+
+    private MediaCache(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        evictor = new LruEvictor(clampMaxBytes(prefs.getLong(PREF_MAX_BYTES, DEFAULT_MAX_BYTES)));
+        cache = new SimpleCache(new File(context.getCacheDir(), DIR_NAME), evictor,
+            new StandaloneDatabaseProvider(context));
+        Log.i(TAG, "Media cache " + cache.getCacheSpace() / 1024 + "KB used, cap " + evictor.maxBytes / 1024 + "KB");
+    }
+
+    /** Change the size cap (bytes); persisted, and enforced from the next cache write. */
+    public void setMaxBytes(long maxBytes) {
+        long clamped = clampMaxBytes(maxBytes);
+        evictor.maxBytes = clamped;
+        prefs.edit().putLong(PREF_MAX_BYTES, clamped).apply();
+        Log.i(TAG, "Media cache cap set to " + clamped / 1024 + "KB");
+    }
+
+    public long getMaxBytes() {
+        return evictor.maxBytes;
+    }
+
+    public long getUsedBytes() {
+        return cache.getCacheSpace();
+    }
+
+    /** Data source factory that reads/writes keyed DataSpecs through the cache and passes the rest to upstream. */
+    public DataSource.Factory dataSourceFactory(DataSource.Factory upstream) {
+        CacheDataSource.Factory cached = new CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(upstream)
+            // A broken cache file must not stop playback
+            .setFlags(CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR);
+        return () -> new KeyedCacheDataSource(cached.createDataSource(), upstream.createDataSource());
+    }
+
+    /**
+     * Download bytes [0, length) of the keyed content at uri into the cache, skipping what is already
+     * cached. Blocks; returns early (InterruptedIOException) once token is cancelled.
+     */
+    public void prefetch(DataSource.Factory upstream, Uri uri, String key, long length, CancellationToken token)
+            throws IOException {
+        CacheDataSource dataSource = new CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(upstream)
+            .createDataSource();
+        DataSpec dataSpec = new DataSpec.Builder()
+            .setUri(uri)
+            .setKey(key)
+            .setPosition(0)
+            .setLength(length)
+            .build();
+        CacheWriter writer = new CacheWriter(dataSource, dataSpec, null, null);
+        token.onCancel(writer::cancel);
+        writer.cache();
+    }
+
+    /** Bytes of key cached contiguously from position 0. */
+    public long cachedPrefixBytes(String key) {
+        return cache.getCachedLength(key, 0, Long.MAX_VALUE);
+    }
+
+    private static long clampMaxBytes(long maxBytes) {
+        return Math.max(MIN_MAX_BYTES, maxBytes);
+    }
+
+    /** Picks the cached or the direct source per open(), by whether the DataSpec has a cache key. */
+    private static final class KeyedCacheDataSource implements DataSource {
+        private final DataSource cached;
+        private final DataSource direct;
+        @Nullable private DataSource current;
+
+        KeyedCacheDataSource(DataSource cached, DataSource direct) {
+            this.cached = cached;
+            this.direct = direct;
+        }
+
+        @Override
+        public void addTransferListener(TransferListener transferListener) {
+            cached.addTransferListener(transferListener);
+            direct.addTransferListener(transferListener);
+        }
+
+        @Override
+        public long open(DataSpec dataSpec) throws IOException {
+            current = dataSpec.key != null ? cached : direct;
+            return current.open(dataSpec);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (current == null) throw new IOException("read() before open()");
+            return current.read(buffer, offset, length);
+        }
+
+        @Nullable
+        @Override
+        public Uri getUri() {
+            return current != null ? current.getUri() : null;
+        }
+
+        @Override
+        public Map<String, List<String>> getResponseHeaders() {
+            return current != null ? current.getResponseHeaders() : DataSource.super.getResponseHeaders();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (current == null) return;
+            try {
+                current.close();
+            } finally {
+                current = null;
+            }
+        }
+    }
+
+    /**
+     * LeastRecentlyUsedCacheEvictor with a mutable cap. SimpleCache calls it with its own lock
+     * held, so it needs no locking of its own.
+     */
+    private static final class LruEvictor implements CacheEvictor {
+        volatile long maxBytes;
+        private final TreeSet<CacheSpan> leastRecentlyUsed = new TreeSet<>(LruEvictor::compare);
+        private long currentSize;
+
+        LruEvictor(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public boolean requiresCacheSpanTouches() {
+            return true;
+        }
+
+        @Override
+        public void onCacheInitialized() {}
+
+        @Override
+        public void onStartFile(Cache cache, String key, long position, long length) {
+            evict(cache, length != C.LENGTH_UNSET ? length : 0);
+        }
+
+        @Override
+        public void onSpanAdded(Cache cache, CacheSpan span) {
+            leastRecentlyUsed.add(span);
+            currentSize += span.length;
+            evict(cache, 0);
+        }
+
+        @Override
+        public void onSpanRemoved(Cache cache, CacheSpan span) {
+            leastRecentlyUsed.remove(span);
+            currentSize -= span.length;
+        }
+
+        @Override
+        public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+            onSpanRemoved(cache, oldSpan);
+            onSpanAdded(cache, newSpan);
+        }
+
+        private void evict(Cache cache, long requiredSpace) {
+            while (currentSize + requiredSpace > maxBytes && !leastRecentlyUsed.isEmpty()) {
+                cache.removeSpan(leastRecentlyUsed.first());
+            }
+        }
+
+        private static int compare(CacheSpan lhs, CacheSpan rhs) {
+            int byTouch = Long.compare(lhs.lastTouchTimestamp, rhs.lastTouchTimestamp);
+            return byTouch != 0 ? byTouch : lhs.compareTo(rhs);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.tyranokim.voicechat.audio;
+
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.media3.common.MediaItem;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+
+import com.tyranokim.voicechat.net.NetworkStack;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Warms the next playlist item during the current item's tail, so the track boundary (auto-advance
+ * or ⏭) starts audio from local data instead of paying connection + initial buffering:
+ *
+ *  - VOD items: resolved like the player would (StreamDataSpecResolver, which also picks the cache
+ *    key), then their first PREFETCH_BYTES are written into MediaCache on one AudioTaskExecutor
+ *    thread — a disk budget, not player memory; the player reads them back at the switch
+ *  - HLS items: the manifest is requested once so the server's HLS proxy has done its first,
+ *    slow yt-dlp call by the time the player asks for it
+ *
+ * One prefetch at a time; a newer request (or cancel()) aborts the previous one.
+ */
+@UnstableApi
+public class NextTrackPrefetcher {
+    private static final String TAG = "NextTrackPrefetcher";
+    /** ~60s of 128kbps audio: enough to start instantly and ride out the player's first request. */
+    private static final long PREFETCH_BYTES = 1024 * 1024;
+
+    private final MediaCache mediaCache;
+    private final DataSource.Factory upstream;
+    private final StreamDataSpecResolver resolver;
+    @Nullable private CancellationToken current;
+    private int prefetchedIndex = -1;
+
+    /** upstream: non-caching, non-resolving source for the resolved URLs. */
+    public NextTrackPrefetcher(MediaCache mediaCache, DataSource.Factory upstream, StreamDataSpecResolver resolver) {
+        this.mediaCache = mediaCache;
+        this.upstream = upstream;
+        this.resolver = resolver;
+    }
+
+    /** Prefetch item (playlist index) unless it already was since the last cancel(). Player thread. */
+    public void prefetch(int index, MediaItem item) {
+        if (index == prefetchedIndex || item.localConfiguration == null) return;
+        cancel();
+        prefetchedIndex = index;
+        Uri uri = item.localConfiguration.uri;
+        String key = item.localConfiguration.customCacheKey;
+        CancellationToken token = new CancellationToken();
+        current = token;
+        if (uri.toString().contains("/hls-proxy")) {
+            warmManifest(index, uri, token);
+        } else if (key != null || "https".equals(uri.getScheme())) {
+            // Keyed VOD, or a page URL that gets its key once resolved
+            AudioTaskExecutor.getInstance().submit("prefetch #" + index, token, t -> prefetchBytes(index, uri, key, t));
+        }
+    }
+
+    /** Abort the running prefetch and forget which index was done. Player thread. */
+    public void cancel() {
+        if (current != null) {
+            current.cancel();
+            current = null;
+        }
+        prefetchedIndex = -1;
+    }
+
+    public void shutdown() {
+        cancel();
+    }
+
+    private void prefetchBytes(int index, Uri uri, @Nullable String key, CancellationToken token) {
+        if (token.isCancelled()) return;
+        long startMs = System.currentTimeMillis();
+        try {
+            DataSpec resolved = resolver.resolveDataSpec(new DataSpec.Builder().setUri(uri).setKey(key).build());
+            if (resolved.key == null || token.isCancelled()
+                    || mediaCache.cachedPrefixBytes(resolved.key) >= PREFETCH_BYTES) return;
+            mediaCache.prefetch(upstream, resolved.uri, resolved.key, PREFETCH_BYTES, token);
+            Log.i(TAG, "Prefetched track " + index + " (" + mediaCache.cachedPrefixBytes(resolved.key) / 1024 + "KB) in "
+                + (System.currentTimeMillis() - startMs) + "ms");
+        } catch (InterruptedIOException e) {
+            Log.d(TAG, "Prefetch of track " + index + " cancelled");
+        } catch (IOException e) {
+            // A live page URL fails here too (StreamDataSpecResolver); the resolve window handles it
+            Log.w(TAG, "Prefetch of track " + index + " failed: " + e.getMessage());
+        }
+    }
+
+    private void warmManifest(int index, Uri uri, CancellationToken token) {
+        Request request = new Request.Builder()
+            .url(uri.toString())
+            .header("User-Agent", NetworkStack.USER_AGENT)
+            .build();
+        Call call = NetworkStack.streamingClient().newCall(request);
+        token.onCancel(call::cancel);
+        call.enqueue(new Callback() {
+            @Override
+            public void onResponse(@NonNull Call c, @NonNull Response response) {
+                Log.i(TAG, "Warmed HLS manifest of track " + index + ": HTTP " + response.code());
+                response.close();
+            }
+
+            @Override
+            public void onFailure(@NonNull Call c, @NonNull IOException e) {
+                if (!c.isCanceled()) Log.w(TAG, "HLS warm-up of track " + index + " failed: " + e.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,39 @@
+package com.tyranokim.voicechat.audio;
+
+import androidx.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * In-process handoff of a play() queue from BackgroundAudioPlugin to BackgroundAudioService.
+ *
+ * The Intent only carries the handoff id, so a queue of tens of thousands of items is neither
+ * serialized to JSON nor pushed through Binder (~1MB transaction limit →
+ * TransactionTooLargeException). Only the latest queue is held: a newer put() replaces one the
+ * service never took. If the service runs in another process, take() finds nothing and the service
+ * falls back to the JSON extra, which the plugin still adds for small queues.
+ */
+public final class PlaylistHandoff {
+    private static long nextId = 0;
+    private static long pendingId = -1;
+    @Nullable private static List<String> pending;
+
+    private PlaylistHandoff() {}
+
+    /** Park sources for the service; returns the id to put in the Intent. */
+    public static synchronized long put(List<String> sources) {
+        pendingId = ++nextId;
+        pending = sources;
+        return pendingId;
+    }
+
+    /** The sources parked under id (once), or null if they were replaced or never put here. */
+    @Nullable
+    public static synchronized List<String> take(long id) {
+        if (id != pendingId) return null;
+        List<String> sources = pending;
+        pending = null;
+        pendingId = -1;
+        return sources;
+    }
+}
@@ -0,0 +1,241 @@
+package com.tyranokim.voicechat.audio;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.OptIn;
+import androidx.media3.common.Player;
+import androidx.media3.common.util.UnstableApi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * One playlist as the service plays it: the source URLs and the current index, frozen, tagged
+ * with a generation id that is new for every playlist handed over by play().
+ *
+ *  - the service swaps whole snapshots through a volatile field, so any thread reads a consistent
+ *    (sources, index) pair without locking; moving the index makes a copy with the same generation
+ *  - resolve results live in a per-generation slot table shared by those copies; setResolved
+ *    checks the generation and source URL, so a late result from an old playlist can never land
+ *    in a new one
+ *  - indexOf is a hash lookup (source URL → first index), built on first use and shared by the
+ *    copies, so queues of tens of thousands of items don't pay a linear scan
+ *  - the play order (shuffle as a LazyShuffleOrder, repeat mode) is part of the snapshot, so
+ *    nextIndex / previousIndex answer "what plays after this" the same way the player does
+ *  - a queue edit (edited) is a new generation of the same queue: resolve results are carried over
+ *    by source URL, and a result resolved for an earlier generation of the queue still lands, at
+ *    the index its source URL moved to; a shuffle keeps its order through the edit
+ */
+@OptIn(markerClass = UnstableApi.class)
+public final class PlaylistSnapshot {
+    private static final AtomicLong generations = new AtomicLong();
+
+    public static final PlaylistSnapshot EMPTY = new PlaylistSnapshot(0, 0, Collections.emptyList(),
+        new AtomicReferenceArray<>(0), new SourceIndex(), -1, null, Player.REPEAT_MODE_OFF);
+
+    public final long generation;
+    // Generation this queue was created with by play(); its edits have later generations
+    private final long queueGeneration;
+    /** Unmodifiable. */
+    public final List<String> sources;
+    /** -1 when empty. */
+    public final int currentIndex;
+    /** Shuffled play order, or null for list order. */
+    @Nullable public final LazyShuffleOrder shuffle;
+    /** Player.REPEAT_MODE_OFF / ONE / ALL. */
+    public final int repeatMode;
+    // Sparse resolve results by index (playable URL + expiry). null = not yet resolved.
+    private final AtomicReferenceArray<StreamUrlResolver.ResolveResult> resolved;
+    private final SourceIndex sourceIndex;
+
+    /** Lazily built source URL → first index map, shared by the copies of one generation. */
+    private static final class SourceIndex {
+        @Nullable private volatile Map<String, Integer> map;
+
+        Map<String, Integer> get(List<String> sources) {
+            Map<String, Integer> m = map;
+            if (m == null) {
+                // Racing builders produce equal maps; whichever lands is fine
+                m = new HashMap<>(sources.size() * 4 / 3 + 1);
+                for (int i = sources.size() - 1; i >= 0; i--) m.put(sources.get(i), i);
+                map = m;
+            }
+            return m;
+        }
+    }
+
+    private PlaylistSnapshot(long generation, long queueGeneration, List<String> sources,
+                             AtomicReferenceArray<StreamUrlResolver.ResolveResult> resolved, SourceIndex sourceIndex,
+                             int currentIndex, @Nullable LazyShuffleOrder shuffle, int repeatMode) {
+        this.generation = generation;
+        this.queueGeneration = queueGeneration;
+        this.sources = sources;
+        this.resolved = resolved;
+        this.sourceIndex = sourceIndex;
+        this.currentIndex = currentIndex;
+        this.shuffle = shuffle;
+        this.repeatMode = repeatMode;
+    }
+
+    /**
+     * New generation over sources, in list order without repeat. initial (same length, null
+     * entries allowed) pre-fills the resolve slots; currentIndex is clamped into range.
+     */
+    public static PlaylistSnapshot create(List<String> sources, @Nullable List<StreamUrlResolver.ResolveResult> initial,
+                                          int currentIndex) {
+        List<String> frozen = Collections.unmodifiableList(new ArrayList<>(sources));
+        AtomicReferenceArray<StreamUrlResolver.ResolveResult> slots = new AtomicReferenceArray<>(frozen.size());
+        if (initial != null) {
+            for (int i = 0; i < Math.min(initial.size(), frozen.size()); i++) slots.set(i, initial.get(i));
+        }
+        int index = frozen.isEmpty() ? -1 : Math.max(0, Math.min(frozen.size() - 1, currentIndex));
+        long generation = generations.incrementAndGet();
+        return new PlaylistSnapshot(generation, generation, frozen, slots, new SourceIndex(), index,
+            null, Player.REPEAT_MODE_OFF);
+    }
+
+    /**
+     * This queue after edit (clamped to it). Resolve results move with their source URL; the repeat
+     * mode stays, a shuffle keeps its order (new items go to random positions after the current
+     * one) and the current index follows the current item (QueueEdit.currentIndexAfter).
+     */
+    public PlaylistSnapshot edited(QueueEdit edit) {
+        List<String> frozen = Collections.unmodifiableList(edit.apply(sources));
+        AtomicReferenceArray<StreamUrlResolver.ResolveResult> slots = new AtomicReferenceArray<>(frozen.size());
+        Map<String, Integer> oldIndex = sourceIndex.get(this.sources);
+        for (int i = 0; i < frozen.size(); i++) {
+            Integer from = oldIndex.get(frozen.get(i));
+            if (from != null) slots.set(i, resolved.get(from));
+        }
+        int index = edit.currentIndexAfter(currentIndex, frozen.size());
+        return new PlaylistSnapshot(generations.incrementAndGet(), queueGeneration, frozen, slots, new SourceIndex(),
+            index, shuffle != null ? shuffleAfter(edit) : null, repeatMode);
+    }
+
+    private LazyShuffleOrder shuffleAfter(QueueEdit edit) {
+        LazyShuffleOrder order = shuffle;
+        switch (edit.op) {
+            case QueueEdit.INSERT:
+                return order.cloneAndInsert(edit.index, edit.items.size(), order.positionOf(currentIndex) + 1);
+            case QueueEdit.REMOVE:
+                return order.cloneAndRemove(edit.index, edit.index + edit.count);
+            case QueueEdit.MOVE:
+                return order.cloneAndMove(edit.index, edit.index + edit.count, edit.newIndex);
+            case QueueEdit.REPLACE:
+                LazyShuffleOrder removed = order.cloneAndRemove(edit.index, edit.index + edit.count);
+                int kept = edit.mapIndex(currentIndex);
+                int current = kept >= edit.index ? kept - edit.items.size() : kept;
+                return removed.cloneAndInsert(edit.index, edit.items.size(), removed.positionOf(current) + 1);
+            default:
+                return order;
+        }
+    }
+
+    /** True if forGeneration is this snapshot's generation or an earlier one of the same queue. */
+    public boolean isSameQueue(long forGeneration) {
+        return forGeneration >= queueGeneration && forGeneration <= generation;
+    }
+
+    /** Same playlist (generation, resolve slots) with another current index. */
+    public PlaylistSnapshot withCurrentIndex(int index) {
+        if (index == currentIndex || !contains(index)) return this;
+        return new PlaylistSnapshot(generation, queueGeneration, sources, resolved, sourceIndex, index, shuffle, repeatMode);
+    }
+
+    /**
+     * Same playlist with another play order. Turning shuffle on starts a new random order with the
+     * current item first; a shuffle that stays on keeps its order.
+     */
+    public PlaylistSnapshot withPlayOrder(boolean shuffled, int repeat) {
+        LazyShuffleOrder order = !shuffled ? null
+            : shuffle != null ? shuffle
+            : new LazyShuffleOrder(sources.size(), currentIndex);
+        if (order == shuffle && repeat == repeatMode) return this;
+        return new PlaylistSnapshot(generation, queueGeneration, sources, resolved, sourceIndex, currentIndex, order, repeat);
+    }
+
+    public int size() {
+        return sources.size();
+    }
+
+    public boolean isEmpty() {
+        return sources.isEmpty();
+    }
+
+    public boolean contains(int index) {
+        return index >= 0 && index < sources.size();
+    }
+
+    @Nullable
+    public String sourceAt(int index) {
+        return contains(index) ? sources.get(index) : null;
+    }
+
+    @Nullable
+    public String currentSource() {
+        return sourceAt(currentIndex);
+    }
+
+    /** First index of sourceUrl, or -1. */
+    public int indexOf(@Nullable String sourceUrl) {
+        if (sourceUrl == null) return -1;
+        Integer index = sourceIndex.get(sources).get(sourceUrl);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Item played after index when skipping forward (shuffle order; wraps with REPEAT_MODE_ALL,
+     * REPEAT_MODE_ONE counts as off like the player's seekToNext), or -1.
+     */
+    public int nextIndex(int index) {
+        if (!contains(index)) return -1;
+        int next = shuffle != null ? shuffle.getNextIndex(index) : index + 1 < sources.size() ? index + 1 : -1;
+        if (next < 0 && repeatMode == Player.REPEAT_MODE_ALL) next = shuffle != null ? shuffle.getFirstIndex() : 0;
+        return next;
+    }
+
+    /** Item played before index in the play order (see nextIndex), or -1. */
+    public int previousIndex(int index) {
+        if (!contains(index)) return -1;
+        int previous = shuffle != null ? shuffle.getPreviousIndex(index) : index - 1;
+        if (previous < 0 && repeatMode == Player.REPEAT_MODE_ALL) {
+            previous = shuffle != null ? shuffle.getLastIndex() : sources.size() - 1;
+        }
+        return previous;
+    }
+
+    public boolean hasNext() {
+        return nextIndex(currentIndex) >= 0;
+    }
+
+    public boolean hasPrev() {
+        return previousIndex(currentIndex) >= 0;
+    }
+
+    @Nullable
+    public StreamUrlResolver.ResolveResult resolvedAt(int index) {
+        return contains(index) ? resolved.get(index) : null;
+    }
+
+    public boolean isResolved(int index) {
+        return resolvedAt(index) != null;
+    }
+
+    /**
+     * Store result for index if it was resolved for this generation and index still holds
+     * sourceUrl; resolved for an earlier generation of this queue (edited since), it goes to
+     * sourceUrl's current index. Returns the index it was stored at, or -1 (result dropped).
+     */
+    public int setResolved(long forGeneration, int index, String sourceUrl, StreamUrlResolver.ResolveResult result) {
+        if (forGeneration != generation) {
+            index = isSameQueue(forGeneration) ? indexOf(sourceUrl) : -1;
+        }
+        if (!sourceUrl.equals(sourceAt(index))) return -1;
+        resolved.set(index, result);
+        return index;
+    }
+}
@@ -0,0 +1,215 @@
+package com.tyranokim.voicechat.audio;
+
+import android.content.Intent;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One incremental change to the service's queue (source URLs), touching only the k items it names:
+ *
+ *  - insert: items go in before index (index = size, or APPEND_INDEX, appends)
+ *  - remove: count items from index
+ *  - move: count items from index so the first of them ends up at newIndex (Player.moveMediaItems)
+ *  - replace: count items from index are replaced by items (any number)
+ *
+ * Ranges are clamped to the queue by clampedTo(); apply / mapIndex describe the result, so the
+ * snapshot, the player's item list and SessionStore's journal (toJson) get the same edit.
+ */
+public final class QueueEdit {
+    public static final String INSERT = "insert";
+    public static final String REMOVE = "remove";
+    public static final String MOVE = "move";
+    public static final String REPLACE = "replace";
+    /** insert index meaning "at the end, whatever the size is by then". */
+    public static final int APPEND_INDEX = Integer.MAX_VALUE;
+
+    private static final String EXTRA_EDIT = "queueEdit";
+
+    public final String op;
+    public final int index;
+    public final int count;
+    public final int newIndex;
+    /** Unmodifiable; empty for remove / move. */
+    public final List<String> items;
+
+    private QueueEdit(String op, int index, int count, int newIndex, List<String> items) {
+        this.op = op;
+        this.index = index;
+        this.count = count;
+        this.newIndex = newIndex;
+        this.items = Collections.unmodifiableList(items);
+    }
+
+    public static QueueEdit insert(int index, List<String> items) {
+        return new QueueEdit(INSERT, index, 0, 0, items);
+    }
+
+    public static QueueEdit remove(int index, int count) {
+        return new QueueEdit(REMOVE, index, count, 0, Collections.emptyList());
+    }
+
+    public static QueueEdit move(int index, int count, int newIndex) {
+        return new QueueEdit(MOVE, index, count, newIndex, Collections.emptyList());
+    }
+
+    public static QueueEdit replace(int index, int count, List<String> items) {
+        return new QueueEdit(REPLACE, index, count, 0, items);
+    }
+
+    /** Same edit with its range fitted into a queue of size items; null if it changes nothing. */
+    @Nullable
+    public QueueEdit clampedTo(int size) {
+        int from = Math.max(0, Math.min(size, index));
+        int n = Math.max(0, Math.min(size - from, count));
+        switch (op) {
+            case INSERT:
+                return items.isEmpty() ? null : new QueueEdit(op, from, 0, 0, items);
+            case REMOVE:
+                return n == 0 ? null : new QueueEdit(op, from, n, 0, items);
+            case MOVE:
+                int to = Math.max(0, Math.min(size - n, newIndex));
+                return n == 0 || to == from ? null : new QueueEdit(op, from, n, to, items);
+            case REPLACE:
+                return n == 0 && items.isEmpty() ? null : new QueueEdit(op, from, n, 0, items);
+            default:
+                return null;
+        }
+    }
+
+    /** The queue after this (clamped) edit. */
+    public List<String> apply(List<String> sources) {
+        List<String> result = new ArrayList<>(sources.size() + items.size());
+        result.addAll(sources);
+        applyTo(result);
+        return result;
+    }
+
+    /** Apply this (clamped) edit to sources in place. */
+    public void applyTo(List<String> sources) {
+        switch (op) {
+            case INSERT:
+                sources.addAll(index, items);
+                break;
+            case REMOVE:
+                sources.subList(index, index + count).clear();
+                break;
+            case MOVE:
+                List<String> moved = new ArrayList<>(sources.subList(index, index + count));
+                sources.subList(index, index + count).clear();
+                sources.addAll(newIndex, moved);
+                break;
+            case REPLACE:
+                sources.subList(index, index + count).clear();
+                sources.addAll(index, items);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /** Where the item at position ends up after this (clamped) edit; -1 if it is removed / replaced. */
+    public int mapIndex(int position) {
+        if (position < 0) return -1;
+        switch (op) {
+            case INSERT:
+                return position >= index ? position + items.size() : position;
+            case REMOVE:
+                if (position < index) return position;
+                return position >= index + count ? position - count : -1;
+            case MOVE:
+                if (position >= index && position < index + count) return newIndex + position - index;
+                int rest = position < index ? position : position - count;
+                return rest >= newIndex ? rest + count : rest;
+            case REPLACE:
+                if (position < index) return position;
+                // Replaced, even by the same source URL — keeping() splits such an edit around the item
+                return position >= index + count ? position - count + items.size() : -1;
+            default:
+                return position;
+        }
+    }
+
+    /**
+     * The current index after this (clamped) edit, for a queue of newSize items: where the current
+     * item went, or the item that took the edit's place if it was removed / replaced (-1 if empty).
+     */
+    public int currentIndexAfter(int currentIndex, int newSize) {
+        int mapped = mapIndex(currentIndex);
+        if (mapped >= 0) return mapped;
+        return newSize > 0 ? Math.min(index, newSize - 1) : -1;
+    }
+
+    /**
+     * A replace of sources that puts the same source URL back at position, as the replaces of the
+     * items after and before it (in that order, so the first one's indices stay valid): applied in
+     * turn they give the same queue, and the item at position is never replaced. null if this edit
+     * isn't such a replace.
+     */
+    @Nullable
+    public List<QueueEdit> keeping(List<String> sources, int position) {
+        int offset = position - index;
+        if (!REPLACE.equals(op) || offset < 0 || offset >= count || offset >= items.size()
+            || !items.get(offset).equals(sources.get(position))) {
+            return null;
+        }
+        List<QueueEdit> parts = new ArrayList<>(2);
+        QueueEdit after = new QueueEdit(REPLACE, position + 1, count - offset - 1, 0,
+            new ArrayList<>(items.subList(offset + 1, items.size()))).clampedTo(sources.size());
+        if (after != null) parts.add(after);
+        QueueEdit before = new QueueEdit(REPLACE, index, offset, 0, new ArrayList<>(items.subList(0, offset)))
+            .clampedTo(sources.size());
+        if (before != null) parts.add(before);
+        return parts;
+    }
+
+    /** JSON form, for SessionStore's journal and the intent extra. */
+    public JSONObject toJson() {
+        JSONObject o = new JSONObject();
+        try {
+            o.put("op", op);
+            o.put("index", index);
+            o.put("count", count);
+            o.put("newIndex", newIndex);
+            o.put("items", new JSONArray(items));
+        } catch (JSONException e) {
+            // Keys are non-null and values finite: not thrown
+        }
+        return o;
+    }
+
+    @Nullable
+    public static QueueEdit fromJson(JSONObject o) {
+        String op = o.optString("op", "");
+        JSONArray arr = o.optJSONArray("items");
+        if (op.isEmpty() || arr == null) return null;
+        List<String> items = new ArrayList<>(arr.length());
+        for (int i = 0; i < arr.length(); i++) {
+            String item = arr.optString(i, "");
+            if (!item.isEmpty()) items.add(item);
+        }
+        return new QueueEdit(op, o.optInt("index", 0), o.optInt("count", 0), o.optInt("newIndex", 0), items);
+    }
+
+    public void putInto(Intent intent) {
+        intent.putExtra(EXTRA_EDIT, toJson().toString());
+    }
+
+    @Nullable
+    public static QueueEdit fromIntent(Intent intent) {
+        String json = intent.getStringExtra(EXTRA_EDIT);
+        if (json == null) return null;
+        try {
+            return fromJson(new JSONObject(json));
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+}
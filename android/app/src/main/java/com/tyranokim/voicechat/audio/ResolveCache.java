@@ -0,0 +1,240 @@
+package com.tyranokim.voicechat.audio;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Disk-backed videoId → resolved stream cache, shared by BackgroundAudioPlugin and BackgroundAudioService
+ * through StreamUrlResolver.
+ *
+ * Server-side yt-dlp resolution takes 30-40s, so results are remembered across service restarts:
+ *  - VOD entries stay fresh for hours, live entries only for minutes (a live stream may end and become VOD)
+ *  - Stale entries are still served (up to MAX_STALE_FACTOR × TTL) while the resolver revalidates them
+ *  - A direct CDN URL also goes stale EXPIRY_REFRESH_MARGIN_MS before its own expiry
+ *  - LRU eviction keeps at most MAX_ENTRIES videos; the file is rewritten at most once per SAVE_DELAY_MS
+ */
+public class ResolveCache {
+    private static final String TAG = "ResolveCache";
+    private static final String FILE_NAME = "resolve_cache.json";
+
+    private static final int MAX_ENTRIES = 500;
+    private static final long VOD_TTL_MS = 6 * 60 * 60_000L;
+    private static final long LIVE_TTL_MS = 10 * 60_000L;
+    /** Entries older than TTL × this factor are dropped instead of served stale. */
+    private static final int MAX_STALE_FACTOR = 4;
+    private static final long SAVE_DELAY_MS = 2_000;
+    /** A direct URL this close to expiry is no longer fresh (revalidated in the background). */
+    public static final long EXPIRY_REFRESH_MARGIN_MS = 10 * 60_000L;
+
+    public static final String KIND_VOD = "vod";
+    public static final String KIND_LIVE = "live";
+
+    public static final class Entry {
+        public final String videoId;
+        public final String playableUrl;
+        public final String kind;
+        public final String title;
+        public final long fetchedAtMs;
+        /** ETag from the server response, sent back as If-None-Match when revalidating. */
+        @Nullable public final String etag;
+        /** Non-IP-bound googlevideo audioUrl for VOD (direct-CDN mode); null if unusable. */
+        @Nullable public final String directUrl;
+        /** When directUrl stops working (its expire= parameter or the server's expiresAt); 0 = unknown. */
+        public final long expiresAtMs;
+
+        public Entry(String videoId, String playableUrl, String kind, String title, long fetchedAtMs,
+                     @Nullable String etag, @Nullable String directUrl, long expiresAtMs) {
+            this.videoId = videoId;
+            this.playableUrl = playableUrl;
+            this.kind = kind;
+            this.title = title;
+            this.fetchedAtMs = fetchedAtMs;
+            this.etag = etag;
+            this.directUrl = directUrl;
+            this.expiresAtMs = expiresAtMs;
+        }
+
+        public boolean isLive() {
+            return KIND_LIVE.equals(kind);
+        }
+
+        private long ttlMs() {
+            return isLive() ? LIVE_TTL_MS : VOD_TTL_MS;
+        }
+
+        public boolean isFresh(long nowMs) {
+            return nowMs - fetchedAtMs < ttlMs() && !expiresWithin(nowMs, EXPIRY_REFRESH_MARGIN_MS);
+        }
+
+        /** True if directUrl has a known expiry that falls before nowMs + marginMs. */
+        public boolean expiresWithin(long nowMs, long marginMs) {
+            return directUrl != null && expiresAtMs > 0 && expiresAtMs - nowMs < marginMs;
+        }
+
+        boolean isUsable(long nowMs) {
+            return nowMs - fetchedAtMs < ttlMs() * MAX_STALE_FACTOR;
+        }
+
+        /** Same entry, revalidated at nowMs (server answered 304 Not Modified). */
+        Entry touched(long nowMs) {
+            return new Entry(videoId, playableUrl, kind, title, nowMs, etag, directUrl, expiresAtMs);
+        }
+
+        /** Same entry without its direct URL (the CDN refused it; stick to the proxy). */
+        Entry withoutDirectUrl() {
+            return new Entry(videoId, playableUrl, kind, title, fetchedAtMs, etag, null, 0);
+        }
+
+        JSONObject toJson() throws Exception {
+            JSONObject o = new JSONObject();
+            o.put("videoId", videoId);
+            o.put("playableUrl", playableUrl);
+            o.put("kind", kind);
+            o.put("title", title);
+            o.put("fetchedAtMs", fetchedAtMs);
+            if (etag != null) o.put("etag", etag);
+            if (directUrl != null) o.put("directUrl", directUrl);
+            if (expiresAtMs > 0) o.put("expiresAtMs", expiresAtMs);
+            return o;
+        }
+
+        @Nullable
+        static Entry fromJson(JSONObject o) {
+            String videoId = o.optString("videoId", "");
+            String playableUrl = o.optString("playableUrl", "");
+            if (videoId.isEmpty() || playableUrl.isEmpty()) return null;
+            return new Entry(
+                videoId,
+                playableUrl,
+                o.optString("kind", KIND_VOD),
+                o.optString("title", videoId),
+                o.optLong("fetchedAtMs", 0),
+                o.has("etag") ? o.optString("etag") : null,
+                o.has("directUrl") ? o.optString("directUrl") : null,
+                o.optLong("expiresAtMs", 0)
+            );
+        }
+    }
+
+    private static ResolveCache instance;
+
+    public static synchronized ResolveCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new ResolveCache(new File(context.getApplicationContext().getCacheDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    private final File file;
+    // accessOrder=true → iteration order is least-recently-used first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(
+        r -> new Thread(r, "ResolveCacheSaver"));
+    private boolean loaded = false;
+    private boolean saveScheduled = false;
+
+    private ResolveCache(File file) {
+        this.file = file;
+    }
+
+    /** Cached entry for videoId, fresh or stale-but-usable. Null if missing or too old to serve. */
+    @Nullable
+    public synchronized Entry get(String videoId) {
+        ensureLoaded();
+        Entry e = entries.get(videoId);
+        if (e == null) return null;
+        if (!e.isUsable(System.currentTimeMillis())) {
+            entries.remove(videoId);
+            scheduleSave();
+            return null;
+        }
+        return e;
+    }
+
+    public synchronized void put(Entry entry) {
+        ensureLoaded();
+        entries.put(entry.videoId, entry);
+        scheduleSave();
+    }
+
+    public synchronized void remove(String videoId) {
+        ensureLoaded();
+        if (entries.remove(videoId) != null) scheduleSave();
+    }
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+        if (!file.exists()) return;
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] buf = new byte[(int) file.length()];
+            int off = 0;
+            while (off < buf.length) {
+                int n = in.read(buf, off, buf.length - off);
+                if (n < 0) break;
+                off += n;
+            }
+            JSONArray arr = new JSONArray(new String(buf, 0, off, StandardCharsets.UTF_8));
+            long now = System.currentTimeMillis();
+            // File is written LRU-first, so re-inserting in order restores the access order
+            for (int i = 0; i < arr.length(); i++) {
+                JSONObject o = arr.optJSONObject(i);
+                Entry e = o != null ? Entry.fromJson(o) : null;
+                if (e != null && e.isUsable(now)) entries.put(e.videoId, e);
+            }
+            Log.i(TAG, "Loaded " + entries.size() + " cached resolves");
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to load resolve cache: " + e.getMessage());
+        }
+    }
+
+    private void scheduleSave() {
+        if (saveScheduled) return;
+        saveScheduled = true;
+        saver.schedule(this::save, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void save() {
+        List<Entry> snapshot;
+        synchronized (this) {
+            saveScheduled = false;
+            snapshot = new ArrayList<>(entries.values());
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            JSONArray arr = new JSONArray();
+            for (Entry e : snapshot) arr.put(e.toJson());
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                out.write(arr.toString().getBytes(StandardCharsets.UTF_8));
+                out.getFD().sync();
+            }
+            if (!tmp.renameTo(file)) {
+                Log.w(TAG, "Failed to replace " + file.getName());
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to save resolve cache: " + e.getMessage());
+        }
+    }
+}
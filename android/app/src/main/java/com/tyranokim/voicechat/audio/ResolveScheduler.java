@@ -0,0 +1,227 @@
+package com.tyranokim.voicechat.audio;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps a window of playlist items around the current index resolved (by default 3 ahead, 1 behind).
+ * "Ahead" and "behind" follow the playlist's play order, so with shuffle / repeat-all the window holds
+ * the items that will actually play next.
+ *
+ *  - focus(index) re-centres the window: jobs for indices that left it are cancelled (their HTTP calls
+ *    too, unless another caller shares the same resolve) and missing ones are queued nearest-first
+ *  - the current index always sorts first and the pool has one thread per window slot, so the
+ *    current track never waits behind prefetches
+ *
+ * Results are delivered to the Host on a worker thread, tagged with the playlist generation the job
+ * was queued for. After a queue edit (new generation of the same queue) running jobs are kept and
+ * follow their source URL to its new index; only what left the window is cancelled.
+ */
+public class ResolveScheduler {
+    private static final String TAG = "ResolveScheduler";
+    private static final int MAX_WINDOW_SIDE = 10;
+    /** Largest window (current + MAX_WINDOW_SIDE each way), i.e. the most resolves it runs at once. */
+    static final int MAX_WINDOW_SIZE = 2 * MAX_WINDOW_SIDE + 1;
+
+    public interface Host {
+        /** The current playlist; called on any thread. */
+        PlaylistSnapshot playlist();
+
+        void onResolved(long generation, int index, String sourceUrl, StreamUrlResolver.ResolveResult result);
+    }
+
+    private final class Job implements Runnable, Comparable<Job> {
+        final long generation;
+        // Moves with the source URL when the queue is edited (under the scheduler's lock)
+        volatile int index;
+        final String sourceUrl;
+        final int priority;
+        final long sequence;
+        // true → bypass the resolve cache (the known URL is about to expire)
+        final boolean refresh;
+        final CancellationToken token = new CancellationToken();
+
+        Job(long generation, int index, String sourceUrl, int priority, long sequence, boolean refresh) {
+            this.generation = generation;
+            this.index = index;
+            this.sourceUrl = sourceUrl;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.refresh = refresh;
+        }
+
+        @Override
+        public void run() {
+            if (token.isCancelled()) return;
+            try {
+                StreamUrlResolver.ResolveResult r = refresh
+                    ? resolver.refresh(sourceUrl, token)
+                    : resolver.resolve(sourceUrl, null, token);
+                if (!token.isCancelled()) host.onResolved(generation, index, sourceUrl, r);
+            } catch (Exception e) {
+                Log.w(TAG, "Resolve job " + index + " failed: " + e.getMessage());
+            } finally {
+                synchronized (ResolveScheduler.this) {
+                    if (jobs.get(index) == this) jobs.remove(index);
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            if (priority != other.priority) return Integer.compare(priority, other.priority);
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final StreamUrlResolver resolver;
+    private final Host host;
+    private final ThreadPoolExecutor pool;
+    // index → queued or running job
+    private final Map<Integer, Job> jobs = new HashMap<>();
+    private int ahead;
+    private int behind;
+    private int focusIndex = -1;
+    private long sequence = 0;
+
+    public ResolveScheduler(StreamUrlResolver resolver, Host host, int ahead, int behind) {
+        this.resolver = resolver;
+        this.host = host;
+        this.ahead = clampSide(ahead);
+        this.behind = clampSide(behind);
+        int threads = windowSize();
+        AtomicInteger threadCount = new AtomicInteger();
+        pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new PriorityBlockingQueue<>(),
+            r -> new Thread(r, "ResolveAhead-" + threadCount.incrementAndGet()));
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    public synchronized void setWindow(int ahead, int behind) {
+        this.ahead = clampSide(ahead);
+        this.behind = clampSide(behind);
+        int threads = windowSize();
+        if (threads > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(threads);
+            pool.setCorePoolSize(threads);
+        } else {
+            pool.setCorePoolSize(threads);
+            pool.setMaximumPoolSize(threads);
+        }
+        Log.i(TAG, "Resolve window: " + this.ahead + " ahead, " + this.behind + " behind");
+        if (focusIndex >= 0) focus(focusIndex);
+    }
+
+    /** Re-centre the window on index: cancel what left it, queue what's missing (current first). */
+    public synchronized void focus(int index) {
+        focusIndex = index;
+        PlaylistSnapshot playlist = host.playlist();
+        // Current → +1 → -1 → +2 → -2 ... in play order; the same order is the queue priority
+        List<Integer> order = windowOrder(playlist, index);
+        Set<Integer> window = new HashSet<>(order);
+
+        Map<Integer, Job> kept = new HashMap<>();
+        for (Job job : jobs.values()) {
+            // A job of an earlier generation of this queue resolves the same URL, wherever it moved
+            int idx = job.generation == playlist.generation ? job.index
+                : playlist.isSameQueue(job.generation) ? playlist.indexOf(job.sourceUrl) : -1;
+            if (idx >= 0 && window.contains(idx) && !kept.containsKey(idx)) {
+                job.index = idx;
+                kept.put(idx, job);
+            } else {
+                Log.d(TAG, "Cancelling resolve for index " + job.index + " (left window)");
+                job.token.cancel();
+                pool.remove(job);
+            }
+        }
+        jobs.clear();
+        jobs.putAll(kept);
+
+        for (int priority = 0; priority < order.size(); priority++) {
+            int idx = order.get(priority);
+            if (jobs.containsKey(idx) || playlist.isResolved(idx)) continue;
+            String sourceUrl = playlist.sourceAt(idx);
+            if (sourceUrl == null) continue;
+            Job job = new Job(playlist.generation, idx, sourceUrl, priority, sequence++, false);
+            jobs.put(idx, job);
+            pool.execute(job);
+        }
+    }
+
+    /**
+     * Re-resolve index from the server even though the host has a URL for it (e.g. about to expire).
+     * No-op if a job for index is already queued or running.
+     */
+    public synchronized void refresh(int index) {
+        if (jobs.containsKey(index)) return;
+        PlaylistSnapshot playlist = host.playlist();
+        String sourceUrl = playlist.sourceAt(index);
+        if (sourceUrl == null) return;
+        List<Integer> order = windowOrder(playlist, focusIndex);
+        int priority = order.contains(index) ? order.indexOf(index) : order.size();
+        Job job = new Job(playlist.generation, index, sourceUrl, priority, sequence++, true);
+        jobs.put(index, job);
+        pool.execute(job);
+    }
+
+    /** Indices in the current window (current first), empty before the first focus(). */
+    public synchronized List<Integer> windowIndices() {
+        return windowOrder(host.playlist(), focusIndex);
+    }
+
+    /** index, then alternately the next ahead / behind it in play order, without repeats. */
+    private List<Integer> windowOrder(PlaylistSnapshot playlist, int index) {
+        List<Integer> order = new ArrayList<>();
+        if (!playlist.contains(index)) return order;
+        order.add(index);
+        int next = index;
+        int previous = index;
+        for (int d = 1; d <= Math.max(ahead, behind); d++) {
+            if (d <= ahead && next >= 0) {
+                next = playlist.nextIndex(next);
+                if (next >= 0 && !order.contains(next)) order.add(next);
+            }
+            if (d <= behind && previous >= 0) {
+                previous = playlist.previousIndex(previous);
+                if (previous >= 0 && !order.contains(previous)) order.add(previous);
+            }
+        }
+        return order;
+    }
+
+    /** True while index has a queued or running resolve. */
+    public synchronized boolean isResolving(int index) {
+        return jobs.containsKey(index);
+    }
+
+    public synchronized void cancelAll() {
+        for (Job job : jobs.values()) {
+            job.token.cancel();
+            pool.remove(job);
+        }
+        jobs.clear();
+        focusIndex = -1;
+    }
+
+    public void shutdown() {
+        cancelAll();
+        pool.shutdownNow();
+    }
+
+    private int windowSize() {
+        return ahead + behind + 1;
+    }
+
+    private static int clampSide(int value) {
+        return Math.max(0, Math.min(MAX_WINDOW_SIDE, value));
+    }
+}
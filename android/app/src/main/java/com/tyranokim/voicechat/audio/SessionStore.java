@@ -0,0 +1,302 @@
+package com.tyranokim.voicechat.audio;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Crash-safe record of the playback session, so a service restarted after process death
+ * (START_STICKY) comes back with its queue at the saved position instead of empty.
+ *
+ *  - session.json: the queue (source URLs) + title / artist, rewritten atomically once per play()
+ *  - session.log: append-only records, replayed in order on load —
+ *      "sessionId,index,positionMs,rate": the position, a few dozen bytes each, at most one per
+ *        SAVE_INTERVAL_MS unless forced (track change, pause, seek, rate)
+ *      "sessionId,edit,{json}": a QueueEdit (plus title / artist), O(k) for a k-item edit
+ *    beyond MAX_LOG_BYTES the log is compacted: to its last record, or — if it holds edits — by
+ *    folding them into a new session.json that also carries the position
+ *
+ * Resolved URLs are not stored: YouTube items reopen from ResolveCache, so restoring needs no network.
+ * Writes run in order on one background thread; a torn last line (killed mid-append) is ignored on load.
+ */
+public class SessionStore {
+    private static final String TAG = "SessionStore";
+    private static final String QUEUE_FILE = "session.json";
+    private static final String LOG_FILE = "session.log";
+    private static final String EDIT_TAG = "edit,";
+    private static final String DEFAULT_TITLE = "Voice Chat Audio";
+    private static final String DEFAULT_ARTIST = "Voice Chat";
+    private static final long SAVE_INTERVAL_MS = 5_000;
+    private static final long MAX_LOG_BYTES = 16 * 1024;
+
+    public static final class Session {
+        public final List<String> sources;
+        public final int index;
+        public final long positionMs;
+        public final float rate;
+        public final String title;
+        public final String artist;
+        final long sessionId;
+        // True if the log holds edits on top of session.json
+        final boolean edited;
+
+        Session(List<String> sources, int index, long positionMs, float rate, String title, String artist,
+                long sessionId, boolean edited) {
+            this.sources = sources;
+            this.index = index;
+            this.positionMs = positionMs;
+            this.rate = rate;
+            this.title = title;
+            this.artist = artist;
+            this.sessionId = sessionId;
+            this.edited = edited;
+        }
+    }
+
+    private final File queueFile;
+    private final File logFile;
+    private final ThreadPoolExecutor writer;
+    // Written / read on the caller's (player) thread only
+    private boolean active = false;
+    private long lastSavedAtMs = 0;
+    @Nullable private String lastPosition;
+    // Written / read on the writer thread only: the id records are tagged with (0 = none)
+    private long logSessionId = 0;
+    private boolean logHasEdits = false;
+
+    public SessionStore(File dir) {
+        queueFile = new File(dir, QUEUE_FILE);
+        logFile = new File(dir, LOG_FILE);
+        writer = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            r -> new Thread(r, "SessionStore"));
+        writer.allowCoreThreadTimeOut(true);
+    }
+
+    /** Start a new session for a queue handed over by play(). sources must not change afterwards. */
+    public void saveQueue(List<String> sources, String title, String artist) {
+        active = true;
+        lastPosition = null;
+        lastSavedAtMs = 0;
+        writer.execute(() -> {
+            try {
+                long id = Math.max(System.currentTimeMillis(), logSessionId + 1);
+                writeQueueFile(id, sources, title, artist, null);
+                writeAtomically(logFile, "");
+                logSessionId = id;
+                logHasEdits = false;
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to save session queue: " + e.getMessage());
+            }
+        });
+    }
+
+    /** Append the current position; throttled to one record per SAVE_INTERVAL_MS unless force. */
+    public void savePosition(int index, long positionMs, float rate, boolean force) {
+        if (!active || index < 0) return;
+        long now = SystemClock.elapsedRealtime();
+        if (!force && now - lastSavedAtMs < SAVE_INTERVAL_MS) return;
+        String record = String.format(Locale.US, "%d,%d,%.2f", index, Math.max(0, positionMs), rate);
+        if (record.equals(lastPosition)) return;
+        lastPosition = record;
+        lastSavedAtMs = now;
+        writer.execute(() -> appendRecord(record, false));
+    }
+
+    /** Journal a (clamped) queue edit of the session's queue; title / artist are the session's from now on. */
+    public void saveEdit(QueueEdit edit, String title, String artist) {
+        if (!active) return;
+        // Positions recorded before the edit are mapped through it on load; record the next one anyway
+        lastPosition = null;
+        JSONObject o = edit.toJson();
+        try {
+            o.put("title", title);
+            o.put("artist", artist);
+        } catch (JSONException e) {
+            // Non-null keys: not thrown
+        }
+        String record = EDIT_TAG + o;
+        writer.execute(() -> appendRecord(record, true));
+    }
+
+    /** Forget the session (explicit stop): nothing is restored afterwards. */
+    public void clear() {
+        if (!active) return;
+        active = false;
+        lastPosition = null;
+        writer.execute(() -> {
+            logSessionId = 0;
+            logHasEdits = false;
+            if (!queueFile.delete() && queueFile.exists()) Log.w(TAG, "Failed to delete " + queueFile.getName());
+            if (!logFile.delete() && logFile.exists()) Log.w(TAG, "Failed to delete " + logFile.getName());
+        });
+    }
+
+    /** The saved session, or null if there is none. Blocking; continues that session on success. */
+    @Nullable
+    public Session load() {
+        try {
+            Session session = read();
+            if (session == null) return null;
+            active = true;
+            writer.execute(() -> {
+                logSessionId = session.sessionId;
+                logHasEdits = session.edited;
+            });
+            return session;
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to load session: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** session.json with the log replayed on top, or null if there is no (usable) session. */
+    @Nullable
+    private Session read() throws IOException, JSONException {
+        if (!queueFile.exists()) return null;
+        JSONObject o = new JSONObject(readFile(queueFile));
+        long id = o.optLong("sessionId", 0);
+        JSONArray arr = o.optJSONArray("sources");
+        if (id == 0 || arr == null || arr.length() == 0) return null;
+        List<String> sources = new ArrayList<>(arr.length());
+        for (int i = 0; i < arr.length(); i++) sources.add(arr.optString(i, ""));
+        if (sources.contains("")) return null;
+
+        int index = o.optInt("index", 0);
+        long positionMs = o.optLong("positionMs", 0);
+        float rate = (float) o.optDouble("rate", 1);
+        String title = o.optString("title", DEFAULT_TITLE);
+        String artist = o.optString("artist", DEFAULT_ARTIST);
+        boolean edited = false;
+        if (logFile.exists()) {
+            String prefix = id + ",";
+            for (String line : readFile(logFile).split("\n")) {
+                if (!line.startsWith(prefix)) continue;
+                String record = line.substring(prefix.length());
+                if (record.startsWith(EDIT_TAG)) {
+                    JSONObject e;
+                    try {
+                        e = new JSONObject(record.substring(EDIT_TAG.length()));
+                    } catch (JSONException torn) {
+                        continue;
+                    }
+                    QueueEdit edit = QueueEdit.fromJson(e);
+                    edit = edit != null ? edit.clampedTo(sources.size()) : null;
+                    if (edit == null) continue;
+                    int size = sources.size() - edit.count + edit.items.size();
+                    index = edit.currentIndexAfter(index, size);
+                    edit.applyTo(sources);
+                    title = e.optString("title", title);
+                    artist = e.optString("artist", artist);
+                    edited = true;
+                } else {
+                    String[] fields = record.split(",");
+                    if (fields.length != 3) continue;
+                    try {
+                        int recordIndex = Integer.parseInt(fields[0]);
+                        long recordPositionMs = Long.parseLong(fields[1]);
+                        float recordRate = Float.parseFloat(fields[2]);
+                        index = recordIndex;
+                        positionMs = recordPositionMs;
+                        rate = recordRate;
+                    } catch (NumberFormatException torn) {
+                        // Killed mid-append
+                    }
+                }
+            }
+        }
+        if (sources.isEmpty()) return null;
+        index = Math.max(0, Math.min(sources.size() - 1, index));
+        return new Session(sources, index, positionMs, rate, title, artist, id, edited);
+    }
+
+    private void appendRecord(String record, boolean edit) {
+        if (logSessionId == 0) return;
+        String line = logSessionId + "," + record + "\n";
+        try {
+            if (logFile.length() > MAX_LOG_BYTES && !logHasEdits && !edit) {
+                writeAtomically(logFile, line);
+                return;
+            }
+            try (FileOutputStream out = new FileOutputStream(logFile, true)) {
+                out.write(line.getBytes(StandardCharsets.UTF_8));
+            }
+            logHasEdits |= edit;
+            if (logFile.length() > MAX_LOG_BYTES && logHasEdits) fold();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to append session record: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Fold the journaled edits into session.json (with the position, under a new session id) and
+     * empty the log. Killed in between, the new session.json is complete and the old log's records
+     * no longer match its id.
+     */
+    private void fold() {
+        try {
+            Session session = read();
+            if (session == null) return;
+            long id = Math.max(System.currentTimeMillis(), logSessionId + 1);
+            writeQueueFile(id, session.sources, session.title, session.artist, session);
+            logSessionId = id;
+            logHasEdits = false;
+            writeAtomically(logFile, "");
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to compact session log: " + e.getMessage());
+        }
+    }
+
+    private void writeQueueFile(long id, List<String> sources, String title, String artist,
+                                @Nullable Session position) throws IOException, JSONException {
+        JSONObject o = new JSONObject();
+        o.put("sessionId", id);
+        o.put("title", title);
+        o.put("artist", artist);
+        o.put("sources", new JSONArray(sources));
+        if (position != null) {
+            o.put("index", position.index);
+            o.put("positionMs", position.positionMs);
+            o.put("rate", position.rate);
+        }
+        writeAtomically(queueFile, o.toString());
+    }
+
+    private static void writeAtomically(File file, String content) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) throw new IOException("Failed to replace " + file.getName());
+    }
+
+    private static String readFile(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] buf = new byte[(int) file.length()];
+            int off = 0;
+            while (off < buf.length) {
+                int n = in.read(buf, off, buf.length - off);
+                if (n < 0) break;
+                off += n;
+            }
+            return new String(buf, 0, off, StandardCharsets.UTF_8);
+        }
+    }
+}
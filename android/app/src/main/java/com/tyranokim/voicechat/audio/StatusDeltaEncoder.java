@@ -0,0 +1,105 @@
+package com.tyranokim.voicechat.audio;
+
+import androidx.annotation.Nullable;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Turns successive AudioStatus snapshots into deltas for one JS subscription:
+ *
+ *  - only the subscribed fields that changed since the last delta are included (the first delta has all)
+ *  - position is sent as an anchor { positionMs, atMs, rate } only when it drifts more than
+ *    ANCHOR_TOLERANCE_MS from where the previous anchor predicts (seek, track change, pause, rate change);
+ *    JS interpolates positionMs = anchor.positionMs + (now - anchor.atMs) × anchor.rate in between
+ */
+public class StatusDeltaEncoder {
+    public static final String FIELD_POSITION = "position";
+    public static final List<String> FIELDS = Arrays.asList(
+        FIELD_POSITION, "playing", "playWhenReady", "buffering", "durationMs", "index", "hasNext", "hasPrev",
+        "shuffle", "repeatMode", "currentUrl", "title", "artist", "state", "playbackState", "bufferProfile", "error");
+    private static final long ANCHOR_TOLERANCE_MS = 250;
+
+    private final Set<String> mask;
+    // field → value last sent
+    private final Map<String, Object> sent = new HashMap<>();
+    private boolean hasAnchor = false;
+    private long anchorPositionMs;
+    private long anchorAtMs;
+    private float anchorRate;
+
+    /** fields: subset of FIELDS (null or empty = all). */
+    public StatusDeltaEncoder(@Nullable Collection<String> fields) {
+        mask = new LinkedHashSet<>(fields == null || fields.isEmpty() ? FIELDS : fields);
+    }
+
+    /** Delta against what was sent so far, or null if nothing subscribed changed. */
+    @Nullable
+    public JSObject encode(AudioStatus status) {
+        JSObject delta = new JSObject();
+        for (String field : mask) {
+            if (FIELD_POSITION.equals(field)) continue;
+            Object value = valueOf(status, field);
+            if (!sent.containsKey(field) || !Objects.equals(sent.get(field), value)) {
+                sent.put(field, value);
+                delta.put(field, value != null ? value : JSONObject.NULL);
+            }
+        }
+        if (mask.contains(FIELD_POSITION) && anchorMoved(status)) {
+            hasAnchor = true;
+            anchorPositionMs = status.positionMs;
+            anchorAtMs = status.timestampMs;
+            anchorRate = rateOf(status);
+            JSObject anchor = new JSObject();
+            anchor.put("positionMs", anchorPositionMs);
+            anchor.put("atMs", anchorAtMs);
+            anchor.put("rate", anchorRate);
+            delta.put("anchor", anchor);
+        }
+        return delta.length() > 0 ? delta : null;
+    }
+
+    private boolean anchorMoved(AudioStatus status) {
+        if (!hasAnchor || rateOf(status) != anchorRate) return true;
+        long predicted = anchorPositionMs + (long) ((status.timestampMs - anchorAtMs) * anchorRate);
+        return Math.abs(predicted - status.positionMs) > ANCHOR_TOLERANCE_MS;
+    }
+
+    /** Media ms advanced per wall-clock ms: 0 unless audio is actually playing. */
+    private static float rateOf(AudioStatus status) {
+        return status.playing ? status.playbackSpeed : 0f;
+    }
+
+    @Nullable
+    private static Object valueOf(AudioStatus s, String field) {
+        switch (field) {
+            case "playing": return s.playing;
+            case "playWhenReady": return s.playWhenReady;
+            case "buffering": return s.buffering;
+            case "durationMs": return s.durationMs;
+            case "index": return s.index;
+            case "hasNext": return s.hasNext;
+            case "hasPrev": return s.hasPrev;
+            case "shuffle": return s.shuffle;
+            case "repeatMode": return s.repeatMode;
+            case "currentUrl": return s.currentUrl;
+            case "title": return s.title;
+            case "artist": return s.artist;
+            case "state": return s.state;
+            case "playbackState": return s.playbackState;
+            case "bufferProfile": return s.bufferProfile;
+            case "error": return s.error;
+            default: return null;
+        }
+    }
+}
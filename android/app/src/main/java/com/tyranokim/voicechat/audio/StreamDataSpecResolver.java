@@ -0,0 +1,90 @@
+package com.tyranokim.voicechat.audio;
+
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.ResolvingDataSource;
+import androidx.media3.exoplayer.upstream.DefaultLoadErrorHandlingPolicy;
+
+import java.io.IOException;
+
+/**
+ * Lets the player's playlist hold YouTube page URLs: they are resolved to playable stream URLs
+ * (through StreamUrlResolver) when ExoPlayer opens them, on its loading thread.
+ *
+ *  - Every open resolves again, so a reconnect or a retry after 403 gets a refreshed / proxy URL
+ *  - Sits in front of MediaCache and sets the cache key by the resolved path (StreamUrlResolver.cacheKeyFor),
+ *    so a CDN → proxy fallback never continues a file cached from the other path
+ *  - Items already resolved by the resolve-ahead window or playlist warm-up are cache hits
+ *  - Page URLs are loaded as progressive media; one that turns out to be a live stream fails with
+ *    LiveStreamException so the service can swap in an HLS item
+ */
+@UnstableApi
+public class StreamDataSpecResolver implements ResolvingDataSource.Resolver {
+    private static final String TAG = "StreamDataSpecResolver";
+
+    public interface Listener {
+        /** Called on the loading thread each time a page URL is opened as result.playableUrl. */
+        void onOpened(String sourceUrl, StreamUrlResolver.ResolveResult result);
+    }
+
+    /** The server could not resolve the page URL (message is user-facing). */
+    public static class ResolveException extends IOException {
+        public final String sourceUrl;
+
+        ResolveException(String sourceUrl, String message) {
+            super(message);
+            this.sourceUrl = sourceUrl;
+        }
+    }
+
+    /** The page URL is a live stream, which the progressive placeholder item can't play. */
+    public static final class LiveStreamException extends ResolveException {
+        public final StreamUrlResolver.ResolveResult result;
+
+        LiveStreamException(String sourceUrl, StreamUrlResolver.ResolveResult result) {
+            super(sourceUrl, "Live stream: " + sourceUrl);
+            this.result = result;
+        }
+    }
+
+    /** Default retry policy, except resolve errors: the resolver already retried, so fail fast. */
+    public static final class ErrorPolicy extends DefaultLoadErrorHandlingPolicy {
+        @Override
+        public long getRetryDelayMsFor(LoadErrorInfo loadErrorInfo) {
+            if (loadErrorInfo.exception instanceof ResolveException) return C.TIME_UNSET;
+            return super.getRetryDelayMsFor(loadErrorInfo);
+        }
+    }
+
+    private final StreamUrlResolver resolver;
+    private final Listener listener;
+
+    public StreamDataSpecResolver(StreamUrlResolver resolver, Listener listener) {
+        this.resolver = resolver;
+        this.listener = listener;
+    }
+
+    @Override
+    public DataSpec resolveDataSpec(DataSpec dataSpec) throws IOException {
+        String sourceUrl = dataSpec.uri.toString();
+        if (!"youtube_page".equals(resolver.classify(sourceUrl))) return dataSpec;
+
+        StreamUrlResolver.ResolveResult r = resolver.resolve(sourceUrl, null);
+        if (!r.ok || r.playableUrl == null) {
+            throw new ResolveException(sourceUrl, "재생 불가: " + r.message);
+        }
+        if ("hls".equals(resolver.classify(r.playableUrl))) {
+            throw new LiveStreamException(sourceUrl, r);
+        }
+        Log.d(TAG, "Opening " + sourceUrl + " → " + r.playableUrl);
+        listener.onOpened(sourceUrl, r);
+        return dataSpec.buildUpon()
+            .setUri(Uri.parse(r.playableUrl))
+            .setKey(resolver.cacheKeyFor(sourceUrl, r.playableUrl))
+            .build();
+    }
+}
@@ -1,17 +1,38 @@
 package com.tyranokim.voicechat.audio;
 
+import android.content.Context;
 import android.net.Uri;
+import android.os.SystemClock;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.tyranokim.voicechat.net.NetworkStack;
+
+import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
 
 /**
  * Resolves YouTube watch URLs to playable audio stream URLs via the voicechat server (yt-dlp).
@@ -22,34 +43,137 @@ import java.util.Locale;
  * Flow:
  *  - YouTube URL → GET /api/youtube/stream?videoId=xxx
  *  - If isLive=true  → /api/youtube/hls-proxy?videoId=xxx  (server rewrites HLS manifest + proxies segments)
- *  - If isLive=false → audioUrl directly (yt-dlp n-sig makes VOD URLs non-IP-bound)
+ *  - If isLive=false → /api/youtube/proxy?videoId=xxx, or in direct-CDN mode the audioUrl itself
+ *    when it isn't IP-bound (yt-dlp n-sig makes VOD URLs non-IP-bound); the proxy URL is then
+ *    returned as fallbackUrl for the player to switch to on 403/410
+ *
+ * Successful server resolves are remembered in ResolveCache, so one process-wide instance
+ * (getInstance) is shared by BackgroundAudioPlugin and BackgroundAudioService.
+ * Concurrent server resolves of the same videoId (plugin play, service playCurrent, prefetch)
+ * are coalesced into a single HTTP call whose result every caller receives.
  */
 public class StreamUrlResolver {
     private static final String TAG = "StreamUrlResolver";
 
-    private static final String SERVER_BASE       = "https://voicechat.tyranno.xyz";
+    private static final String SERVER_BASE       = NetworkStack.SERVER_BASE;
     private static final String SERVER_STREAM_API = SERVER_BASE + "/api/youtube/stream?videoId=";
     private static final String SERVER_HLS_PROXY  = SERVER_BASE + "/api/youtube/hls-proxy?videoId=";
     private static final String SERVER_PROXY      = SERVER_BASE + "/api/youtube/proxy?videoId=";
+    private static final String SERVER_BATCH_API  = SERVER_BASE + "/api/youtube/stream/batch";
 
     /** Timeout for the server /api/youtube/stream call (yt-dlp can take 30-40s). */
     private static final int SERVER_TIMEOUT_MS = 60_000;
+    /** ResolveResult.message of a resolve abandoned through its CancellationToken. */
+    public static final String CANCELLED = "cancelled";
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    /**
+     * Hedge delay bounds; the delay itself follows the observed p95 of successful attempts. The max
+     * stays above a cold yt-dlp run, so a clamped hedge doesn't duplicate one that is still working.
+     */
+    private static final long DEFAULT_HEDGE_MIN_DELAY_MS = 3_000;
+    private static final long DEFAULT_HEDGE_MAX_DELAY_MS = 45_000;
+    /** Latencies needed before hedging (and the latency-based budget) starts. */
+    private static final int HEDGE_MIN_SAMPLES = 5;
+    /** Give up on the stream API (→ proxy fallback) after this many hedge delays. */
+    private static final int HEDGE_BUDGET_FACTOR = 3;
+    private static final int BREAKER_FAILURE_THRESHOLD = 3;
+    private static final long BREAKER_OPEN_MS = 30_000;
+    /** Direct URLs with less validity left than this are replaced by the proxy URL. */
+    private static final long DIRECT_URL_MIN_LIFETIME_MS = 2 * 60_000L;
+
+    /** Max concurrent server requests issued by resolveAll. */
+    private static final int BATCH_PARALLELISM = 3;
+    /** videoIds per batch-endpoint request. */
+    private static final int BATCH_CHUNK = 20;
+    /**
+     * Concurrent server resolves (flights): the largest resolve window plus resolveAll's workers and a
+     * few play() / player lookups. Further flights queue; background revalidations are skipped instead.
+     */
+    private static final int MAX_FLIGHTS = ResolveScheduler.MAX_WINDOW_SIZE + BATCH_PARALLELISM + 4;
+
+    private static StreamUrlResolver instance;
+
+    public static synchronized StreamUrlResolver getInstance(Context context) {
+        if (instance == null) {
+            instance = new StreamUrlResolver(ResolveCache.getInstance(context), NetworkStack.client());
+        }
+        return instance;
+    }
 
     public static final class ResolveResult {
         public final boolean ok;
         public final String playableUrl;
         public final String sourceType;
         public final String message;
+        /** Proxy URL to switch to if playableUrl (a direct CDN URL) is refused. */
+        @Nullable public final String fallbackUrl;
+        /** When playableUrl stops working (epoch ms); 0 = doesn't expire / unknown. */
+        public final long expiresAtMs;
 
         ResolveResult(boolean ok, @Nullable String playableUrl, String sourceType, @Nullable String message) {
+            this(ok, playableUrl, sourceType, message, null, 0);
+        }
+
+        ResolveResult(boolean ok, @Nullable String playableUrl, String sourceType, @Nullable String message,
+                      @Nullable String fallbackUrl, long expiresAtMs) {
             this.ok = ok;
             this.playableUrl = playableUrl;
             this.sourceType = sourceType;
             this.message = message;
+            this.fallbackUrl = fallbackUrl;
+            this.expiresAtMs = expiresAtMs;
+        }
+
+        /** True if playableUrl has a known expiry before nowMs + marginMs. */
+        public boolean expiresWithin(long nowMs, long marginMs) {
+            return expiresAtMs > 0 && expiresAtMs - nowMs < marginMs;
         }
     }
 
+    private final ResolveCache cache;
+    // Shared app-wide pool (warm HTTP/2 connection to the server), with yt-dlp-sized timeouts
+    private final OkHttpClient httpClient;
+    // Single-flight registry: videoId → the one outstanding server resolve for it
+    private final ConcurrentHashMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+    // Runs Flights (at most MAX_FLIGHTS at once); callers only wait on them, so a cancelled caller
+    // never strands a shared request, and a flight cancelled while queued ends as soon as it starts
+    private final ThreadPoolExecutor flightPool;
+    // Workers for resolveAll; idle threads time out so a warmed playlist leaves nothing running
+    private final ThreadPoolExecutor batchPool;
+    // Cleared once the server answers 404/405/501 on the batch endpoint
+    private volatile boolean batchSupported = true;
+    private final LatencyTracker attemptLatency = new LatencyTracker(50);
+    private final CircuitBreaker streamApiBreaker = new CircuitBreaker(TAG, BREAKER_FAILURE_THRESHOLD, BREAKER_OPEN_MS);
+    private volatile boolean hedgingEnabled = true;
+    private volatile long hedgeMinDelayMs = DEFAULT_HEDGE_MIN_DELAY_MS;
+    private volatile long hedgeMaxDelayMs = DEFAULT_HEDGE_MAX_DELAY_MS;
+    // Play VOD straight from googlevideo when the audioUrl isn't IP-bound (saves server egress)
+    private volatile boolean directCdnEnabled = true;
+
+    private StreamUrlResolver(ResolveCache cache, OkHttpClient sharedClient) {
+        this.cache = cache;
+        // Per-call timeout: the budget until latencies are known; long enough for a cold yt-dlp run
+        this.httpClient = sharedClient.newBuilder()
+            .callTimeout(SERVER_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .readTimeout(SERVER_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .build();
+        AtomicInteger threadCount = new AtomicInteger();
+        batchPool = new ThreadPoolExecutor(BATCH_PARALLELISM, BATCH_PARALLELISM, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> new Thread(r, "ResolveBatch-" + threadCount.incrementAndGet()));
+        batchPool.allowCoreThreadTimeOut(true);
+        AtomicInteger flightCount = new AtomicInteger();
+        flightPool = new ThreadPoolExecutor(MAX_FLIGHTS, MAX_FLIGHTS, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> new Thread(r, "ResolveFlight-" + flightCount.incrementAndGet()));
+        flightPool.allowCoreThreadTimeOut(true);
+    }
+
     public ResolveResult resolve(String sourceUrl, @Nullable String playableUrlHint) {
+        return resolve(sourceUrl, playableUrlHint, null);
+    }
+
+    /** resolve() that stops waiting for the server once token is cancelled. */
+    public ResolveResult resolve(String sourceUrl, @Nullable String playableUrlHint, @Nullable CancellationToken token) {
         String sourceType = classify(sourceUrl);
 
         // If a pre-resolved playable URL was provided and it's usable, use it directly
@@ -66,73 +190,463 @@ public class StreamUrlResolver {
             if (videoId == null) {
                 return new ResolveResult(false, null, sourceType, "Cannot extract videoId from: " + sourceUrl);
             }
-            return resolveViaServer(videoId);
+            return resolveVideoId(videoId, token);
         }
 
         // Direct URL — pass through
         return new ResolveResult(true, sourceUrl, sourceType, null);
     }
 
-    /** Resolve a videoId by calling the server's yt-dlp endpoint. */
+    /**
+     * Resolve a videoId. A cached result is returned immediately (stale ones are revalidated in
+     * the background); otherwise the server's yt-dlp endpoint is called.
+     */
     public ResolveResult resolveVideoId(String videoId) {
-        return resolveViaServer(videoId);
+        return resolveVideoId(videoId, null);
+    }
+
+    /**
+     * Like resolveVideoId(videoId), but gives up as soon as token is cancelled. The server request
+     * itself is only aborted once no other caller is waiting for the same videoId.
+     */
+    public ResolveResult resolveVideoId(String videoId, @Nullable CancellationToken token) {
+        ResolveCache.Entry cached = cache.get(videoId);
+        if (cached != null) {
+            if (!cached.isFresh(System.currentTimeMillis())) {
+                revalidateAsync(cached);
+            }
+            Log.d(TAG, "Cache hit for " + videoId + " (" + cached.kind + ")");
+            return fromEntry(cached);
+        }
+        return resolveCoalesced(videoId, token);
+    }
+
+    /**
+     * Resolve sourceUrl from the server even if the cache holds it (used to replace URLs that are
+     * about to expire). Joins a resolve already in flight for the same video.
+     */
+    public ResolveResult refresh(String sourceUrl, @Nullable CancellationToken token) {
+        if (!"youtube_page".equals(classify(sourceUrl))) return resolve(sourceUrl, null, token);
+        String videoId = extractVideoId(sourceUrl);
+        if (videoId == null) {
+            return new ResolveResult(false, null, "youtube_page", "Cannot extract videoId from: " + sourceUrl);
+        }
+        Log.i(TAG, "Refreshing " + videoId);
+        return resolveCoalesced(videoId, token);
+    }
+
+    /**
+     * One outstanding server resolve, shared by every caller waiting for the same videoId.
+     * Runs on flightPool; when the last waiter gives up before it finishes, its HTTP calls are cancelled.
+     */
+    private final class Flight implements Runnable {
+        final String videoId;
+        @Nullable final ResolveCache.Entry previous;
+        private final List<CountDownLatch> wakeups = new ArrayList<>();
+        private final List<Call> calls = new ArrayList<>();
+        private int waiters = 0;
+        private boolean finished = false;
+        private volatile boolean cancelled = false;
+        private volatile ResolveResult result;
+
+        Flight(String videoId, @Nullable ResolveCache.Entry previous) {
+            this.videoId = videoId;
+            this.previous = previous;
+        }
+
+        /** Register interest; false if the flight was already cancelled (start a new one instead). */
+        synchronized boolean join(@Nullable CountDownLatch wakeup) {
+            if (cancelled) return false;
+            waiters++;
+            if (wakeup != null) {
+                if (finished) wakeup.countDown();
+                else wakeups.add(wakeup);
+            }
+            return true;
+        }
+
+        /** A waiter gave up. When nobody is left, abort the HTTP calls. */
+        void leave() {
+            synchronized (this) {
+                waiters--;
+                if (waiters > 0 || finished) return;
+                cancelled = true;
+                for (Call call : calls) call.cancel();
+            }
+            inFlight.remove(videoId, this);
+            Log.d(TAG, "Cancelled unwanted resolve for " + videoId);
+        }
+
+        /** Track an HTTP call so cancellation can abort it. */
+        synchronized void register(Call call) {
+            if (cancelled) call.cancel();
+            else calls.add(call);
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!cancelled) result = resolveViaServer(videoId, previous, this);
+            } finally {
+                inFlight.remove(videoId, this);
+                synchronized (this) {
+                    finished = true;
+                    calls.clear();
+                    for (CountDownLatch wakeup : wakeups) wakeup.countDown();
+                    wakeups.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Attach to the server resolve in flight for videoId (starting one if needed) and wait for it,
+     * or until token is cancelled.
+     */
+    private ResolveResult resolveCoalesced(String videoId, @Nullable CancellationToken token) {
+        CountDownLatch wakeup = new CountDownLatch(1);
+        Flight flight = null;
+        while (flight == null) {
+            Flight existing = inFlight.get(videoId);
+            if (existing != null && existing.join(wakeup)) {
+                Log.d(TAG, "Joining in-flight resolve for " + videoId);
+                flight = existing;
+                break;
+            }
+            Flight created = new Flight(videoId, null);
+            created.join(wakeup);
+            boolean installed = existing == null
+                ? inFlight.putIfAbsent(videoId, created) == null
+                : inFlight.replace(videoId, existing, created);
+            if (installed) {
+                flightPool.execute(created);
+                flight = created;
+            }
+        }
+        if (token != null) token.onCancel(wakeup::countDown);
+
+        try {
+            wakeup.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ResolveResult result = flight.result;
+        if (result != null) return result;
+        flight.leave();
+        if (token != null && token.isCancelled()) {
+            return new ResolveResult(false, null, "youtube_page", CANCELLED);
+        }
+        return new ResolveResult(true, SERVER_PROXY + videoId, "http", null);
+    }
+
+    private void revalidateAsync(ResolveCache.Entry stale) {
+        if (inFlight.containsKey(stale.videoId)) return;
+        // Best effort: the stale entry still plays, so a busy pool (e.g. resolveAll over a large
+        // stale queue) skips it rather than queueing one revalidation per item
+        if (flightPool.getActiveCount() + flightPool.getQueue().size() >= MAX_FLIGHTS) return;
+        // A conditional request could answer 304 and keep the expiring URL, so fetch unconditionally
+        boolean expiring = stale.expiresWithin(System.currentTimeMillis(), ResolveCache.EXPIRY_REFRESH_MARGIN_MS);
+        // Background interest that never leaves: the revalidation always runs to completion
+        Flight flight = new Flight(stale.videoId, expiring ? null : stale);
+        flight.join(null);
+        if (inFlight.putIfAbsent(stale.videoId, flight) == null) {
+            flightPool.execute(flight);
+        }
+    }
+
+    /** Receives resolveAll results one by one, on a resolver worker thread. */
+    public interface ResolveListener {
+        /** @param position index of the source URL in the list passed to resolveAll */
+        void onResolved(int position, String sourceUrl, ResolveResult result);
+    }
+
+    /**
+     * Resolve many source URLs in the background, reporting each result as soon as it is known.
+     * Cached and non-YouTube items are reported first (the scan, cache lookups included, runs on a
+     * resolver worker too); the rest are sent to the server's batch endpoint in chunks (when it
+     * exists) or resolved one by one, at most BATCH_PARALLELISM requests at a time. Cancelling the
+     * returned token drops pending items and abandons the ones being resolved.
+     */
+    public CancellationToken resolveAll(List<String> sourceUrls, ResolveListener listener) {
+        CancellationToken handle = new CancellationToken();
+        batchPool.execute(() -> scanAll(handle, sourceUrls, listener));
+        return handle;
+    }
+
+    private void scanAll(CancellationToken handle, List<String> sourceUrls, ResolveListener listener) {
+        List<Integer> pendingPositions = new ArrayList<>();
+        List<String> pendingIds = new ArrayList<>();
+        for (int i = 0; i < sourceUrls.size(); i++) {
+            if (handle.isCancelled()) return;
+            String sourceUrl = sourceUrls.get(i);
+            String videoId = "youtube_page".equals(classify(sourceUrl)) ? extractVideoId(sourceUrl) : null;
+            ResolveCache.Entry cached = videoId != null ? cache.get(videoId) : null;
+            if (videoId == null || (cached != null && cached.isFresh(System.currentTimeMillis()))) {
+                listener.onResolved(i, sourceUrl, resolve(sourceUrl, null));
+            } else {
+                pendingPositions.add(i);
+                pendingIds.add(videoId);
+            }
+        }
+        Log.i(TAG, "resolveAll: " + sourceUrls.size() + " items, " + pendingIds.size() + " need the server");
+
+        for (int start = 0; start < pendingIds.size(); start += BATCH_CHUNK) {
+            int end = Math.min(start + BATCH_CHUNK, pendingIds.size());
+            List<Integer> positions = new ArrayList<>(pendingPositions.subList(start, end));
+            List<String> ids = new ArrayList<>(pendingIds.subList(start, end));
+            batchPool.execute(() -> resolveChunk(handle, sourceUrls, positions, ids, listener));
+        }
+    }
+
+    private void resolveChunk(CancellationToken handle, List<String> sourceUrls, List<Integer> positions,
+                              List<String> ids, ResolveListener listener) {
+        if (handle.isCancelled()) return;
+        Map<String, ResolveCache.Entry> batched = batchSupported ? fetchBatch(ids) : null;
+        for (int i = 0; i < ids.size(); i++) {
+            int position = positions.get(i);
+            String videoId = ids.get(i);
+            ResolveCache.Entry entry = batched != null ? batched.get(videoId) : null;
+            if (entry != null) {
+                listener.onResolved(position, sourceUrls.get(position), fromEntry(entry));
+            } else if (batched == null) {
+                // No batch endpoint: one request per item, each on its own pool slot
+                batchPool.execute(() -> {
+                    if (handle.isCancelled()) return;
+                    ResolveResult result = resolveVideoId(videoId, handle);
+                    if (!handle.isCancelled()) listener.onResolved(position, sourceUrls.get(position), result);
+                });
+            } else {
+                // Batch answered but skipped this item → resolve it individually on this worker
+                ResolveResult result = resolveVideoId(videoId, handle);
+                if (handle.isCancelled()) return;
+                listener.onResolved(position, sourceUrls.get(position), result);
+            }
+        }
+    }
+
+    /**
+     * POST {"videoIds":[...]} to the batch endpoint. Returns resolved entries by videoId (also stored
+     * in the cache), or null when the batch call failed. A 404/405/501 disables batching for this process.
+     */
+    @Nullable
+    private Map<String, ResolveCache.Entry> fetchBatch(List<String> ids) {
+        JSONObject body = new JSONObject();
+        Request request;
+        try {
+            body.put("videoIds", new JSONArray(ids));
+            request = new Request.Builder()
+                .url(SERVER_BATCH_API)
+                .header("User-Agent", NetworkStack.USER_AGENT)
+                .post(RequestBody.create(body.toString(), JSON))
+                .build();
+        } catch (Exception e) {
+            Log.w(TAG, "Batch request build failed: " + e.getMessage());
+            return null;
+        }
+        try (Response response = httpClient.newCall(request).execute()) {
+            int code = response.code();
+            if (code == 404 || code == 405 || code == 501) {
+                batchSupported = false;
+                Log.i(TAG, "Batch endpoint unavailable (HTTP " + code + ") — resolving items individually");
+                return null;
+            }
+            if (code != 200 || response.body() == null) {
+                Log.w(TAG, "Batch resolve returned HTTP " + code);
+                return null;
+            }
+
+            // Accept either {"results":[...]} or a bare array of /stream-shaped objects
+            String text = response.body().string().trim();
+            JSONArray results = text.startsWith("[") ? new JSONArray(text) : new JSONObject(text).optJSONArray("results");
+            Map<String, ResolveCache.Entry> resolved = new HashMap<>();
+            if (results != null) {
+                for (int i = 0; i < results.length(); i++) {
+                    JSONObject item = results.optJSONObject(i);
+                    String videoId = item != null ? item.optString("videoId", "") : "";
+                    if (videoId.isEmpty() || item.has("error")) continue;
+                    ResolveCache.Entry entry = entryFromStreamInfo(videoId, item, null);
+                    cache.put(entry);
+                    resolved.put(videoId, entry);
+                }
+            }
+            Log.i(TAG, "Batch resolved " + resolved.size() + "/" + ids.size());
+            return resolved;
+        } catch (Exception e) {
+            Log.w(TAG, "Batch resolve failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private ResolveResult fromEntry(ResolveCache.Entry entry) {
+        // A direct URL about to expire is useless to the player; the proxy URL never expires
+        if (!entry.isLive() && directCdnEnabled && entry.directUrl != null
+                && !entry.expiresWithin(System.currentTimeMillis(), DIRECT_URL_MIN_LIFETIME_MS)) {
+            return new ResolveResult(true, entry.directUrl, "http", null, entry.playableUrl, entry.expiresAtMs);
+        }
+        return new ResolveResult(true, entry.playableUrl, entry.isLive() ? "hls" : "http", null);
+    }
+
+    public void setDirectCdnEnabled(boolean enabled) {
+        directCdnEnabled = enabled;
+        Log.i(TAG, "Direct-CDN VOD playback " + (enabled ? "enabled" : "disabled"));
+    }
+
+    /**
+     * MediaCache key for a YouTube source played from playableUrl: "yt:videoId:" plus the path the bytes
+     * come from — "proxy", or the CDN format ("itag140"; "cdn" if the URL names none). CDN and proxy
+     * responses aren't guaranteed to be the same file byte for byte, so their spans must never be
+     * spliced into one. Null for non-YouTube sources.
+     */
+    @Nullable
+    public String cacheKeyFor(@Nullable String sourceUrl, String playableUrl) {
+        String videoId = "youtube_page".equals(classify(sourceUrl)) ? extractVideoId(sourceUrl) : null;
+        if (videoId == null) return null;
+        if (playableUrl.startsWith(SERVER_PROXY)) return "yt:" + videoId + ":proxy";
+        String itag = null;
+        try {
+            itag = Uri.parse(playableUrl).getQueryParameter("itag");
+        } catch (Exception ignored) {}
+        return "yt:" + videoId + ":" + (itag != null && !itag.isEmpty() ? "itag" + itag : "cdn");
+    }
+
+    /** Server proxy URL for a YouTube source URL, or null for non-YouTube sources. */
+    @Nullable
+    public String proxyUrlFor(@Nullable String sourceUrl) {
+        if (!"youtube_page".equals(classify(sourceUrl))) return null;
+        String videoId = extractVideoId(sourceUrl);
+        return videoId != null ? SERVER_PROXY + videoId : null;
+    }
+
+    /** The CDN refused the direct URL for this source (403/410): use the proxy for it from now on. */
+    public void reportDirectUrlFailed(@Nullable String sourceUrl) {
+        if (!"youtube_page".equals(classify(sourceUrl))) return;
+        String videoId = extractVideoId(sourceUrl);
+        ResolveCache.Entry entry = videoId != null ? cache.get(videoId) : null;
+        if (entry != null && entry.directUrl != null) {
+            Log.w(TAG, "Direct URL refused for " + videoId + " — proxy only from now on");
+            cache.put(entry.withoutDirectUrl());
+        }
+    }
+
+    /**
+     * Expiry of a direct URL in epoch ms: googlevideo's expire= parameter (epoch seconds), else the
+     * server's expiresAt (epoch seconds), else 0 (unknown).
+     */
+    private long expiryOf(String directUrl, JSONObject data) {
+        try {
+            String expire = Uri.parse(directUrl).getQueryParameter("expire");
+            if (expire != null) return Long.parseLong(expire) * 1000L;
+        } catch (Exception ignored) {}
+        long serverExpiresAt = data.optLong("expiresAt", 0);
+        return serverExpiresAt > 0 ? serverExpiresAt * 1000L : 0;
+    }
+
+    /**
+     * googlevideo URLs list their signed parameters in {@code sparams}; if "ip" is among them the URL
+     * only works from the server's IP and must go through the proxy.
+     */
+    private boolean isIpBound(String audioUrl) {
+        try {
+            String sparams = Uri.parse(audioUrl).getQueryParameter("sparams");
+            if (sparams == null) return false;
+            for (String param : sparams.split(",")) {
+                if ("ip".equals(param.trim())) return true;
+            }
+        } catch (Exception ignored) {}
+        return false;
+    }
+
+    /** Result of one HTTP attempt against /api/youtube/stream (body already read). */
+    private static final class Attempt {
+        final int code;
+        @Nullable final String body;
+        @Nullable final String etag;
+        @Nullable final Exception error;
+
+        Attempt(int code, @Nullable String body, @Nullable String etag, @Nullable Exception error) {
+            this.code = code;
+            this.body = body;
+            this.etag = etag;
+            this.error = error;
+        }
+
+        boolean isUsable() {
+            return error == null && (code == 200 || code == 304);
+        }
     }
 
     /**
      * Call /api/youtube/stream?videoId={id} to resolve stream info via server-side yt-dlp.
      * Returns HLS proxy URL for live streams, direct audioUrl for VOD.
+     * When {@code previous} carries an ETag the request is conditional and a 304 just refreshes it.
+     *
+     * Tail latency is bounded by the observed latency instead of waiting out SERVER_TIMEOUT_MS:
+     *  - if no answer arrives by the observed p95, an identical hedge request is fired; first usable answer wins
+     *  - after HEDGE_BUDGET_FACTOR × that delay both attempts are abandoned and the proxy fallback is
+     *    used; a slow server isn't a failing one, so this doesn't count against the circuit breaker
+     *  - until HEDGE_MIN_SAMPLES latencies are known there is one attempt with SERVER_TIMEOUT_MS: a
+     *    hedge at a guessed delay would double the yt-dlp work of most cold resolves
+     *  - when the stream API keeps failing, the circuit breaker skips it and goes straight to the proxy
      */
-    private ResolveResult resolveViaServer(String videoId) {
+    @Nullable
+    private ResolveResult resolveViaServer(String videoId, @Nullable ResolveCache.Entry previous, Flight flight) {
+        if (!streamApiBreaker.allowRequest()) {
+            Log.w(TAG, "Stream API circuit open — proxy fallback for " + videoId);
+            return new ResolveResult(true, SERVER_PROXY + videoId, "http", null);
+        }
+
+        String apiUrl = SERVER_STREAM_API + videoId;
+        Log.d(TAG, "Resolving via server: " + apiUrl);
+        Request.Builder requestBuilder = new Request.Builder()
+            .url(apiUrl)
+            .header("User-Agent", NetworkStack.USER_AGENT);
+        if (previous != null && previous.etag != null) {
+            requestBuilder.header("If-None-Match", previous.etag);
+        }
+        Request request = requestBuilder.build();
+
+        Attempt winner = null;
         try {
-            String apiUrl = SERVER_STREAM_API + videoId;
-            Log.d(TAG, "Resolving via server: " + apiUrl);
-
-            URL url = new URL(apiUrl);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(SERVER_TIMEOUT_MS);
-            conn.setReadTimeout(SERVER_TIMEOUT_MS);
-            conn.setRequestProperty("User-Agent", "VoiceChat-Android/1.0");
-
-            int code = conn.getResponseCode();
-            if (code != 200) {
-                conn.disconnect();
-                Log.w(TAG, "Server returned HTTP " + code + " for videoId=" + videoId);
-                // Fallback: use proxy directly (server will handle it, might still fail for live)
-                return new ResolveResult(true, SERVER_PROXY + videoId, "http", null);
-            }
-
-            BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) sb.append(line);
-            reader.close();
-            conn.disconnect();
-
-            JSONObject data = new JSONObject(sb.toString());
-            boolean isLive   = data.optBoolean("isLive", false);
-            String audioUrl  = data.optString("audioUrl", "");
-            String title     = data.optString("title", videoId);
-
-            // Also detect live by URL pattern in case yt-dlp didn't report is_live correctly
-            if (!isLive && (audioUrl.contains("manifest.googlevideo.com") || audioUrl.contains(".m3u8"))) {
-                isLive = true;
-                Log.d(TAG, "Live detected from audioUrl pattern for " + videoId);
-            }
-
-            if (isLive) {
-                // Live stream: use HLS proxy (server proxies manifest + all IP-bound segments)
-                // Server pre-warms the HLS cache when /stream is called, so first manifest fetch is fast
-                String hlsProxyUrl = SERVER_HLS_PROXY + videoId;
-                Log.i(TAG, "Live stream " + videoId + " → HLS proxy: " + hlsProxyUrl);
-                return new ResolveResult(true, hlsProxyUrl, "hls", null);
-            } else {
-                // VOD: use server proxy (proven working, avoids any IP-binding uncertainty)
-                String proxyUrl = SERVER_PROXY + videoId;
-                Log.i(TAG, "VOD " + videoId + " → proxy: " + proxyUrl);
-                return new ResolveResult(true, proxyUrl, "http", null);
+            winner = executeHedged(videoId, request, flight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flight.isCancelled()) {
+            // Nobody wants the answer any more; not a stream API failure, but a half-open trial
+            // granted above must be given back or the breaker never lets another request through
+            streamApiBreaker.recordInconclusive();
+            return null;
+        }
+
+        if (winner == null) {
+            // Budget ran out with attempts still running: no verdict on the stream API
+            streamApiBreaker.recordInconclusive();
+            return new ResolveResult(true, SERVER_PROXY + videoId, "http", null);
+        }
+        if (!winner.isUsable()) {
+            streamApiBreaker.recordFailure();
+            if (winner.error == null) {
+                Log.w(TAG, "Server returned HTTP " + winner.code + " for videoId=" + videoId);
             }
+            // Fallback: use proxy directly (server will handle it, might still fail for live)
+            return new ResolveResult(true, SERVER_PROXY + videoId, "http", null);
+        }
+        streamApiBreaker.recordSuccess();
 
+        try {
+            if (winner.code == 304 && previous != null) {
+                Log.d(TAG, "Revalidated " + videoId + " (304)");
+                ResolveCache.Entry touched = previous.touched(System.currentTimeMillis());
+                cache.put(touched);
+                return fromEntry(touched);
+            }
+            ResolveCache.Entry entry = entryFromStreamInfo(videoId, new JSONObject(winner.body), winner.etag);
+            cache.put(entry);
+            return fromEntry(entry);
         } catch (Exception e) {
             Log.e(TAG, "Server resolve failed for " + videoId + ": " + e.getMessage());
             // Last resort: use proxy directly
@@ -140,8 +654,136 @@ public class StreamUrlResolver {
         }
     }
 
+    /**
+     * Run request, hedging it once after the current hedge delay. Returns the first usable attempt,
+     * the last failed one if every attempt failed, or null when the time budget ran out.
+     * Attempts still running on return are cancelled.
+     */
+    @Nullable
+    private Attempt executeHedged(String videoId, Request request, Flight flight) throws InterruptedException {
+        long hedgeDelayMs = currentHedgeDelayMs();
+        long startMs = SystemClock.elapsedRealtime();
+        long hedgeAtMs = startMs + Math.max(0, hedgeDelayMs);
+        long deadlineMs = startMs + (hedgeDelayMs > 0
+            ? Math.min(SERVER_TIMEOUT_MS, hedgeDelayMs * HEDGE_BUDGET_FACTOR) : SERVER_TIMEOUT_MS);
+        boolean hedgeAllowed = hedgingEnabled && hedgeDelayMs > 0;
+
+        LinkedBlockingQueue<Attempt> outcomes = new LinkedBlockingQueue<>();
+        List<Call> calls = new ArrayList<>();
+        calls.add(startAttempt(videoId, request, 1, outcomes, flight));
+        int outstanding = 1;
+        Attempt last = null;
+        try {
+            while (outstanding > 0 && !flight.isCancelled()) {
+                long now = SystemClock.elapsedRealtime();
+                if (now >= deadlineMs) {
+                    Log.w(TAG, "Resolve budget (" + (deadlineMs - startMs) + "ms) exhausted for " + videoId);
+                    // A lower bound of this latency: lets the p95, and so the budget, grow if the server got slower
+                    attemptLatency.record(deadlineMs - startMs);
+                    return null;
+                }
+                boolean hedgePending = hedgeAllowed && calls.size() == 1;
+                if (hedgePending && now >= hedgeAtMs) {
+                    Log.i(TAG, "Hedging resolve for " + videoId + " after " + hedgeDelayMs + "ms");
+                    calls.add(startAttempt(videoId, request, 2, outcomes, flight));
+                    outstanding++;
+                    continue;
+                }
+                long waitMs = (hedgePending ? Math.min(hedgeAtMs, deadlineMs) : deadlineMs) - now;
+                Attempt attempt = outcomes.poll(waitMs, TimeUnit.MILLISECONDS);
+                if (attempt == null) continue;
+                outstanding--;
+                if (attempt.isUsable()) return attempt;
+                last = attempt;
+            }
+            return last;
+        } finally {
+            for (Call call : calls) call.cancel();
+        }
+    }
+
+    private Call startAttempt(String videoId, Request request, int number, LinkedBlockingQueue<Attempt> outcomes,
+                              Flight flight) {
+        Call call = httpClient.newCall(request);
+        long startMs = SystemClock.elapsedRealtime();
+        flight.register(call);
+        call.enqueue(new Callback() {
+            @Override
+            public void onResponse(@NonNull Call c, @NonNull Response response) {
+                try (Response r = response) {
+                    String body = r.body() != null ? r.body().string() : null;
+                    long latencyMs = SystemClock.elapsedRealtime() - startMs;
+                    Log.d(TAG, "Resolve attempt #" + number + " for " + videoId + ": HTTP " + r.code() + " in " + latencyMs + "ms");
+                    if (r.code() == 200 || r.code() == 304) attemptLatency.record(latencyMs);
+                    outcomes.add(new Attempt(r.code(), body, r.header("ETag"), null));
+                } catch (Exception e) {
+                    onFailure(c, e instanceof IOException ? (IOException) e : new IOException(e));
+                }
+            }
+
+            @Override
+            public void onFailure(@NonNull Call c, @NonNull IOException e) {
+                // Cancelled attempts still report, so executeHedged stops waiting once all are gone
+                if (!c.isCanceled()) {
+                    Log.w(TAG, "Resolve attempt #" + number + " for " + videoId + " failed after "
+                        + (SystemClock.elapsedRealtime() - startMs) + "ms: " + e.getMessage());
+                }
+                outcomes.add(new Attempt(-1, null, null, e));
+            }
+        });
+        return call;
+    }
+
+    /** Observed p95 of attempts, clamped to the configured hedge bounds; -1 while there are too few samples. */
+    private long currentHedgeDelayMs() {
+        long p95 = attemptLatency.percentile(95, HEDGE_MIN_SAMPLES, -1);
+        return p95 < 0 ? -1 : Math.max(hedgeMinDelayMs, Math.min(hedgeMaxDelayMs, p95));
+    }
+
+    /**
+     * Tune hedging. minDelayMs/maxDelayMs clamp the p95-based hedge delay (and so the resolve budget,
+     * HEDGE_BUDGET_FACTOR × delay); a null enabled or non-positive delay keeps the current setting.
+     */
+    public void setHedgePolicy(@Nullable Boolean enabled, long minDelayMs, long maxDelayMs) {
+        if (enabled != null) hedgingEnabled = enabled;
+        if (minDelayMs > 0) hedgeMinDelayMs = minDelayMs;
+        if (maxDelayMs > 0) hedgeMaxDelayMs = Math.max(hedgeMinDelayMs, maxDelayMs);
+        Log.i(TAG, "Hedge policy: enabled=" + hedgingEnabled + " min=" + hedgeMinDelayMs + "ms max=" + hedgeMaxDelayMs
+            + "ms current=" + currentHedgeDelayMs() + "ms");
+    }
+
+    /** Build a cache entry from one /api/youtube/stream response object. */
+    private ResolveCache.Entry entryFromStreamInfo(String videoId, JSONObject data, @Nullable String etag) {
+        boolean isLive   = data.optBoolean("isLive", false);
+        String audioUrl  = data.optString("audioUrl", "");
+        String title     = data.optString("title", videoId);
+
+        // Also detect live by URL pattern in case yt-dlp didn't report is_live correctly
+        if (!isLive && (audioUrl.contains("manifest.googlevideo.com") || audioUrl.contains(".m3u8"))) {
+            isLive = true;
+            Log.d(TAG, "Live detected from audioUrl pattern for " + videoId);
+        }
+
+        String playableUrl;
+        if (isLive) {
+            // Live stream: use HLS proxy (server proxies manifest + all IP-bound segments)
+            // Server pre-warms the HLS cache when /stream is called, so first manifest fetch is fast
+            playableUrl = SERVER_HLS_PROXY + videoId;
+            Log.i(TAG, "Live stream " + videoId + " → HLS proxy: " + playableUrl);
+        } else {
+            // VOD: use server proxy (proven working, avoids any IP-binding uncertainty)
+            playableUrl = SERVER_PROXY + videoId;
+            Log.i(TAG, "VOD " + videoId + " → proxy: " + playableUrl);
+        }
+        String directUrl = !isLive && audioUrl.startsWith("http") && !isIpBound(audioUrl) ? audioUrl : null;
+        long expiresAtMs = directUrl != null ? expiryOf(directUrl, data) : 0;
+        return new ResolveCache.Entry(videoId, playableUrl,
+            isLive ? ResolveCache.KIND_LIVE : ResolveCache.KIND_VOD, title, System.currentTimeMillis(), etag,
+            directUrl, expiresAtMs);
+    }
+
     @Nullable
-    private String extractVideoId(String url) {
+    public String extractVideoId(String url) {
         try {
             Uri uri = Uri.parse(url);
             // youtube.com/watch?v=xxx
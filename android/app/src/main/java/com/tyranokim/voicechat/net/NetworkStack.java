@@ -0,0 +1,132 @@
+package com.tyranokim.voicechat.net;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Dns;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * App-wide OkHttp stack shared by the native plugins (stream resolver, STT WebSocket, ExoPlayer).
+ *
+ * Everything talks to voicechat.tyranno.xyz, so one client means:
+ *  - one connection pool → resolves and segment fetches reuse warm HTTP/2 connections (multiplexed)
+ *  - one SSLSocketFactory → TLS sessions are resumed instead of doing full handshakes
+ *  - one DNS cache → no lookup per request on flaky mobile resolvers
+ *
+ * Per-use timeouts are applied with newBuilder(), which keeps the shared pool, dispatcher and DNS.
+ */
+public final class NetworkStack {
+    private static final String TAG = "NetworkStack";
+
+    public static final String SERVER_BASE = "https://voicechat.tyranno.xyz";
+    public static final String USER_AGENT = "VoiceChat-Android/1.0";
+
+    /** Timeout for streaming: the HLS proxy's first request calls yt-dlp (30-40s). */
+    private static final long STREAMING_TIMEOUT_MS = 60_000;
+    private static final long DNS_TTL_MS = 5 * 60_000L;
+
+    private static OkHttpClient client;
+    private static OkHttpClient streamingClient;
+
+    private NetworkStack() {}
+
+    /** Shared client with OkHttp's default timeouts. */
+    public static synchronized OkHttpClient client() {
+        if (client == null) {
+            client = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(8, 5, TimeUnit.MINUTES))
+                .dispatcher(newDispatcher())
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .dns(new CachingDns())
+                .retryOnConnectionFailure(true)
+                .build();
+        }
+        return client;
+    }
+
+    private static Dispatcher newDispatcher() {
+        Dispatcher dispatcher = new Dispatcher();
+        // Default is 5 per host; batch resolves + hedges + STT all target one host
+        dispatcher.setMaxRequestsPerHost(16);
+        return dispatcher;
+    }
+
+    /** Shared client with long read timeouts, for media data (ExoPlayer) and yt-dlp-backed API calls. */
+    public static synchronized OkHttpClient streamingClient() {
+        if (streamingClient == null) {
+            streamingClient = client().newBuilder()
+                .connectTimeout(STREAMING_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .readTimeout(STREAMING_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .build();
+        }
+        return streamingClient;
+    }
+
+    /**
+     * Open (and pool) a connection to the server in the background so the first resolve or
+     * segment fetch skips DNS + TCP + TLS. Safe to call repeatedly.
+     */
+    public static void prewarm() {
+        Request request = new Request.Builder()
+            .url(SERVER_BASE + "/")
+            .head()
+            .header("User-Agent", USER_AGENT)
+            .build();
+        client().newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                Log.d(TAG, "Prewarmed " + SERVER_BASE + " via " + response.protocol());
+                response.close();
+            }
+
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                Log.w(TAG, "Prewarm failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /** Dns.SYSTEM with a short positive cache; failed lookups are not cached. */
+    private static final class CachingDns implements Dns {
+        private static final class Cached {
+            final List<InetAddress> addresses;
+            final long expiresAtMs;
+
+            Cached(List<InetAddress> addresses, long expiresAtMs) {
+                this.addresses = addresses;
+                this.expiresAtMs = expiresAtMs;
+            }
+        }
+
+        private final Map<String, Cached> cache = new ConcurrentHashMap<>();
+
+        @NonNull
+        @Override
+        public List<InetAddress> lookup(@NonNull String hostname) throws UnknownHostException {
+            long now = System.currentTimeMillis();
+            Cached cached = cache.get(hostname);
+            if (cached != null && cached.expiresAtMs > now) return cached.addresses;
+            List<InetAddress> addresses = Dns.SYSTEM.lookup(hostname);
+            cache.put(hostname, new Cached(addresses, now + DNS_TTL_MS));
+            return addresses;
+        }
+    }
+}
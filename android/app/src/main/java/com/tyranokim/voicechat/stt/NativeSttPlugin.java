@@ -12,6 +12,7 @@ import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 import com.getcapacitor.annotation.Permission;
+import com.tyranokim.voicechat.net.NetworkStack;
 
 import org.json.JSONObject;
 
@@ -60,9 +61,8 @@ public class NativeSttPlugin extends Plugin {
     public void load() {
         super.load();
         instance = this;
-        httpClient = new OkHttpClient.Builder()
-            .retryOnConnectionFailure(true)
-            .build();
+        // Shared app-wide client (connection pool, DNS cache, TLS session reuse)
+        httpClient = NetworkStack.client();
     }
 
     public boolean isCurrentlyListening() {
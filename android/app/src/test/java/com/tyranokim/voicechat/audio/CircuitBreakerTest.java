@@ -0,0 +1,90 @@
+package com.tyranokim.voicechat.audio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+    private static final int THRESHOLD = 3;
+    private static final long OPEN_MS = 10_000;
+
+    private long nowMs;
+    private CircuitBreaker breaker;
+
+    @Before
+    public void setUp() {
+        nowMs = 1_000;
+        breaker = new CircuitBreaker("test", THRESHOLD, OPEN_MS) {
+            @Override
+            long elapsedRealtime() {
+                return nowMs;
+            }
+        };
+    }
+
+    private void trip() {
+        for (int i = 0; i < THRESHOLD; i++) breaker.recordFailure();
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        for (int i = 0; i < THRESHOLD - 1; i++) breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void successResetsTheFailureCount() {
+        for (int i = 0; i < THRESHOLD - 1; i++) breaker.recordFailure();
+        breaker.recordSuccess();
+        for (int i = 0; i < THRESHOLD - 1; i++) breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void halfOpenLetsOneTrialThrough() {
+        trip();
+        nowMs += OPEN_MS - 1;
+        assertFalse(breaker.allowRequest());
+        nowMs += 1;
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void failedTrialReopens() {
+        trip();
+        nowMs += OPEN_MS;
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        nowMs += OPEN_MS;
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void cancelledTrialLetsTheNextRequestThrough() {
+        trip();
+        nowMs += OPEN_MS;
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        // The trial resolve is cancelled (skip / window change): StreamUrlResolver reports it inconclusive
+        breaker.recordInconclusive();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+}
@@ -0,0 +1,174 @@
+package com.tyranokim.voicechat.audio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import androidx.media3.common.C;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class LazyShuffleOrderTest {
+    private static final int[] LENGTHS = {1, 2, 3, 4, 5, 7, 16, 17, 63, 64, 65, 100, 1000, 4097};
+
+    @Test
+    public void orderIsABijection() {
+        Random random = new Random(1);
+        for (int length : LENGTHS) {
+            LazyShuffleOrder order = new LazyShuffleOrder(length, random.nextLong(), random.nextInt(length));
+            boolean[] seen = new boolean[length];
+            for (int position = 0; position < length; position++) {
+                int index = order.indexAt(position);
+                assertFalse("length " + length + ": index " + index + " played twice", seen[index]);
+                seen[index] = true;
+                assertEquals(position, order.positionOf(index));
+            }
+        }
+    }
+
+    @Test
+    public void firstIndexIsPlayedFirst() {
+        for (int length : LENGTHS) {
+            for (int first : new int[] {0, length / 2, length - 1}) {
+                LazyShuffleOrder order = new LazyShuffleOrder(length, first);
+                assertEquals(first, order.getFirstIndex());
+                assertEquals(0, order.positionOf(first));
+            }
+        }
+    }
+
+    @Test
+    public void nextAndPreviousRoundTrip() {
+        for (int length : LENGTHS) {
+            LazyShuffleOrder order = new LazyShuffleOrder(length, 42L, -1);
+            int index = order.getFirstIndex();
+            assertEquals(C.INDEX_UNSET, order.getPreviousIndex(index));
+            int visited = 1;
+            while (true) {
+                int next = order.getNextIndex(index);
+                if (next == C.INDEX_UNSET) break;
+                assertEquals(index, order.getPreviousIndex(next));
+                index = next;
+                visited++;
+            }
+            assertEquals(length, visited);
+            assertEquals(order.getLastIndex(), index);
+        }
+    }
+
+    @Test
+    public void emptyOrderHasNoIndices() {
+        LazyShuffleOrder order = new LazyShuffleOrder(0, -1);
+        assertEquals(0, order.getLength());
+        assertEquals(C.INDEX_UNSET, order.getFirstIndex());
+        assertEquals(C.INDEX_UNSET, order.getLastIndex());
+        assertEquals(C.INDEX_UNSET, order.getNextIndex(0));
+        assertEquals(C.INDEX_UNSET, order.getPreviousIndex(0));
+        assertEquals(C.INDEX_UNSET, order.positionOf(0));
+        assertEquals(C.INDEX_UNSET, order.indexAt(0));
+    }
+
+    @Test
+    public void outOfRangeIndicesAreUnset() {
+        LazyShuffleOrder order = new LazyShuffleOrder(10, 7L, -1);
+        assertEquals(C.INDEX_UNSET, order.positionOf(10));
+        assertEquals(C.INDEX_UNSET, order.positionOf(-1));
+        assertEquals(C.INDEX_UNSET, order.getNextIndex(10));
+        assertEquals(C.INDEX_UNSET, order.indexAt(10));
+    }
+
+    @Test
+    public void seedDeterminesTheOrder() {
+        LazyShuffleOrder a = new LazyShuffleOrder(1000, 5L, -1);
+        LazyShuffleOrder b = new LazyShuffleOrder(1000, 5L, -1);
+        LazyShuffleOrder c = new LazyShuffleOrder(1000, 6L, -1);
+        boolean differs = false;
+        for (int position = 0; position < 1000; position++) {
+            assertEquals(a.indexAt(position), b.indexAt(position));
+            differs |= a.indexAt(position) != c.indexAt(position);
+        }
+        assertTrue(differs);
+    }
+
+    @Test
+    public void editsKeepTheOrderOfTheOtherItems() {
+        Random random = new Random(3);
+        int nextId = 0;
+        List<Integer> items = new ArrayList<>();
+        for (; nextId < 40; nextId++) items.add(nextId);
+        LazyShuffleOrder order = new LazyShuffleOrder(items.size(), random.nextLong(), -1);
+        List<Integer> played = playedIds(order, items);
+
+        for (int step = 0; step < 300; step++) {
+            int size = items.size();
+            int from = random.nextInt(size + 1);
+            int count = random.nextInt(Math.min(5, size - from) + 1);
+            Set<Integer> added = new HashSet<>();
+            int firstPosition = 0;
+            switch (size == 0 ? 0 : random.nextInt(3)) {
+                case 0:
+                    int n = 1 + random.nextInt(4);
+                    firstPosition = random.nextInt(size + 1);
+                    for (int i = 0; i < n; i++, nextId++) {
+                        items.add(from + i, nextId);
+                        added.add(nextId);
+                    }
+                    order = order.cloneAndInsert(from, n, firstPosition);
+                    break;
+                case 1:
+                    items.subList(from, from + count).clear();
+                    order = order.cloneAndRemove(from, from + count);
+                    break;
+                default:
+                    int to = random.nextInt(size - count + 1);
+                    List<Integer> moved = new ArrayList<>(items.subList(from, from + count));
+                    items.subList(from, from + count).clear();
+                    items.addAll(to, moved);
+                    order = order.cloneAndMove(from, from + count, to);
+                    break;
+            }
+            assertEquals(items.size(), order.getLength());
+            List<Integer> now = playedIds(order, items);
+            List<Integer> kept = new ArrayList<>(played);
+            kept.retainAll(items);
+            List<Integer> stillThere = new ArrayList<>(now);
+            stillThere.removeAll(added);
+            assertEquals("step " + step, kept, stillThere);
+            for (int position = 0; position < firstPosition; position++) {
+                assertFalse("step " + step, added.contains(now.get(position)));
+            }
+            played = now;
+        }
+    }
+
+    @Test
+    public void removingEverythingLeavesAnEmptyOrder() {
+        LazyShuffleOrder order = new LazyShuffleOrder(5, -1).cloneAndRemove(0, 5);
+        assertEquals(0, order.getLength());
+        assertEquals(C.INDEX_UNSET, order.getFirstIndex());
+        LazyShuffleOrder refilled = order.cloneAndInsert(0, 3);
+        assertEquals(3, refilled.getLength());
+        assertEquals(3, playedIds(refilled, Arrays.asList(0, 1, 2)).size());
+    }
+
+    /** Item ids in play order; also checks that position ↔ index is a bijection. */
+    private static List<Integer> playedIds(LazyShuffleOrder order, List<Integer> items) {
+        List<Integer> ids = new ArrayList<>();
+        boolean[] seen = new boolean[items.size()];
+        for (int position = 0; position < order.getLength(); position++) {
+            int index = order.indexAt(position);
+            assertFalse(seen[index]);
+            seen[index] = true;
+            assertEquals(position, order.positionOf(index));
+            ids.add(items.get(index));
+        }
+        return ids;
+    }
+}
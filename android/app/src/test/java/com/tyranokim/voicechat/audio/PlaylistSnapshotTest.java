@@ -0,0 +1,170 @@
+package com.tyranokim.voicechat.audio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import androidx.media3.common.Player;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class PlaylistSnapshotTest {
+    private static final List<String> SOURCES = Arrays.asList("a", "b", "c", "d");
+
+    private static StreamUrlResolver.ResolveResult result(String url) {
+        return new StreamUrlResolver.ResolveResult(true, url, "direct", null);
+    }
+
+    @Test
+    public void createClampsTheCurrentIndex() {
+        assertEquals(3, PlaylistSnapshot.create(SOURCES, null, 9).currentIndex);
+        assertEquals(0, PlaylistSnapshot.create(SOURCES, null, -5).currentIndex);
+        assertEquals(-1, PlaylistSnapshot.create(Collections.emptyList(), null, 0).currentIndex);
+    }
+
+    @Test
+    public void createPrefillsResolveSlots() {
+        PlaylistSnapshot snapshot = PlaylistSnapshot.create(SOURCES, Arrays.asList(null, result("B")), 0);
+        assertFalse(snapshot.isResolved(0));
+        assertEquals("B", snapshot.resolvedAt(1).playableUrl);
+        assertFalse(snapshot.isResolved(2));
+    }
+
+    @Test
+    public void copiesShareGenerationAndSlots() {
+        PlaylistSnapshot snapshot = PlaylistSnapshot.create(SOURCES, null, 0);
+        PlaylistSnapshot moved = snapshot.withCurrentIndex(2);
+        assertEquals(2, moved.currentIndex);
+        assertEquals(snapshot.generation, moved.generation);
+        assertSame(moved, moved.withCurrentIndex(2));
+        assertSame(moved, moved.withCurrentIndex(7));
+
+        assertEquals(1, moved.setResolved(snapshot.generation, 1, "b", result("B")));
+        assertEquals("B", snapshot.resolvedAt(1).playableUrl);
+    }
+
+    @Test
+    public void setResolvedChecksGenerationAndSource() {
+        PlaylistSnapshot old = PlaylistSnapshot.create(SOURCES, null, 0);
+        PlaylistSnapshot snapshot = PlaylistSnapshot.create(SOURCES, null, 0);
+        assertNotEquals(old.generation, snapshot.generation);
+
+        assertEquals(-1, snapshot.setResolved(snapshot.generation, 1, "x", result("X")));
+        assertEquals(-1, snapshot.setResolved(old.generation, 1, "b", result("B")));
+        assertFalse(snapshot.isResolved(1));
+        assertEquals(1, snapshot.setResolved(snapshot.generation, 1, "b", result("B")));
+    }
+
+    @Test
+    public void editsCarryResultsBySourceUrl() {
+        PlaylistSnapshot snapshot = PlaylistSnapshot.create(SOURCES, null, 2);
+        snapshot.setResolved(snapshot.generation, 2, "c", result("C"));
+
+        PlaylistSnapshot edited = snapshot.edited(QueueEdit.insert(0, Arrays.asList("x")).clampedTo(4));
+        assertTrue(edited.generation > snapshot.generation);
+        assertEquals(Arrays.asList("x", "a", "b", "c", "d"), edited.sources);
+        assertEquals(3, edited.currentIndex);
+        assertEquals("C", edited.resolvedAt(3).playableUrl);
+        assertFalse(edited.isResolved(0));
+
+        // A result resolved for the pre-edit generation lands where its source moved
+        assertEquals(2, edited.setResolved(snapshot.generation, 1, "b", result("B")));
+        assertEquals("B", edited.resolvedAt(2).playableUrl);
+        assertTrue(edited.isSameQueue(snapshot.generation));
+        assertFalse(edited.isSameQueue(PlaylistSnapshot.create(SOURCES, null, 0).generation));
+    }
+
+    @Test
+    public void indexOfFindsTheFirstOccurrence() {
+        PlaylistSnapshot snapshot = PlaylistSnapshot.create(Arrays.asList("a", "b", "a"), null, 0);
+        assertEquals(0, snapshot.indexOf("a"));
+        assertEquals(1, snapshot.indexOf("b"));
+        assertEquals(-1, snapshot.indexOf("z"));
+        assertEquals(-1, snapshot.indexOf(null));
+    }
+
+    @Test
+    public void listOrderNavigation() {
+        PlaylistSnapshot snapshot = PlaylistSnapshot.create(SOURCES, null, 3);
+        assertEquals(-1, snapshot.nextIndex(3));
+        assertEquals(2, snapshot.previousIndex(3));
+        assertFalse(snapshot.hasNext());
+
+        PlaylistSnapshot repeating = snapshot.withPlayOrder(false, Player.REPEAT_MODE_ALL);
+        assertEquals(0, repeating.nextIndex(3));
+        assertEquals(3, repeating.previousIndex(0));
+        assertTrue(repeating.hasNext());
+        assertSame(repeating, repeating.withPlayOrder(false, Player.REPEAT_MODE_ALL));
+    }
+
+    @Test
+    public void shuffledNavigationFollowsTheShuffleOrder() {
+        List<String> sources = new ArrayList<>();
+        for (int i = 0; i < 50; i++) sources.add("s" + i);
+        PlaylistSnapshot snapshot = PlaylistSnapshot.create(sources, null, 17)
+            .withPlayOrder(true, Player.REPEAT_MODE_OFF);
+        LazyShuffleOrder order = snapshot.shuffle;
+        assertEquals(17, order.getFirstIndex());
+        assertSame(order, snapshot.withPlayOrder(true, Player.REPEAT_MODE_ALL).shuffle);
+        assertNull(snapshot.withPlayOrder(false, Player.REPEAT_MODE_OFF).shuffle);
+
+        int index = snapshot.currentIndex;
+        for (int step = 1; step < sources.size(); step++) {
+            int next = snapshot.nextIndex(index);
+            assertEquals(order.getNextIndex(index), next);
+            assertEquals(index, snapshot.previousIndex(next));
+            index = next;
+        }
+        assertEquals(-1, snapshot.nextIndex(index));
+        assertEquals(17, snapshot.withPlayOrder(true, Player.REPEAT_MODE_ALL).nextIndex(index));
+    }
+
+    @Test
+    public void removingTheCurrentItemMovesToTheOneInItsPlace() {
+        PlaylistSnapshot snapshot = PlaylistSnapshot.create(SOURCES, null, 1);
+        assertEquals(1, snapshot.edited(QueueEdit.remove(1, 2).clampedTo(4)).currentIndex);
+        assertEquals(0, snapshot.edited(QueueEdit.remove(1, 3).clampedTo(4)).currentIndex);
+        assertEquals(3, snapshot.edited(QueueEdit.move(0, 2, 2).clampedTo(4)).currentIndex);
+    }
+
+    @Test
+    public void editsKeepTheShuffleOrder() {
+        List<String> sources = new ArrayList<>();
+        for (int i = 0; i < 30; i++) sources.add("s" + i);
+        PlaylistSnapshot snapshot = PlaylistSnapshot.create(sources, null, 10)
+            .withPlayOrder(true, Player.REPEAT_MODE_OFF);
+        List<String> before = playOrder(snapshot);
+
+        PlaylistSnapshot edited = snapshot
+            .edited(QueueEdit.remove(3, 4).clampedTo(30))
+            .edited(QueueEdit.move(0, 2, 20).clampedTo(26))
+            .edited(QueueEdit.insert(QueueEdit.APPEND_INDEX, Arrays.asList("n1", "n2", "n3")).clampedTo(26));
+        assertEquals("s10", edited.currentSource());
+        List<String> after = playOrder(edited);
+        List<String> kept = new ArrayList<>(before);
+        kept.retainAll(edited.sources);
+        List<String> old = new ArrayList<>(after);
+        old.removeAll(Arrays.asList("n1", "n2", "n3"));
+        assertEquals(kept, old);
+        // New items play after the current one
+        assertTrue(after.indexOf("n1") > after.indexOf("s10"));
+        assertTrue(after.indexOf("n2") > after.indexOf("s10"));
+        assertTrue(after.indexOf("n3") > after.indexOf("s10"));
+    }
+
+    private static List<String> playOrder(PlaylistSnapshot snapshot) {
+        List<String> order = new ArrayList<>();
+        for (int position = 0; position < snapshot.size(); position++) {
+            order.add(snapshot.sources.get(snapshot.shuffle.indexAt(position)));
+        }
+        return order;
+    }
+}
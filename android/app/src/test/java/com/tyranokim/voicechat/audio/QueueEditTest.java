@@ -0,0 +1,136 @@
+package com.tyranokim.voicechat.audio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class QueueEditTest {
+    private int nextId = 0;
+
+    private List<String> fresh(int n) {
+        List<String> items = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) items.add("s" + nextId++);
+        return items;
+    }
+
+    private QueueEdit randomEdit(Random random, int size) {
+        // Ranges may stick out of the queue: clampedTo fits them
+        int index = random.nextInt(size + 3);
+        int count = random.nextInt(6);
+        switch (random.nextInt(4)) {
+            case 0:
+                return QueueEdit.insert(random.nextBoolean() ? index : QueueEdit.APPEND_INDEX, fresh(random.nextInt(4)));
+            case 1:
+                return QueueEdit.remove(index, count);
+            case 2:
+                return QueueEdit.move(index, count, random.nextInt(size + 3));
+            default:
+                return QueueEdit.replace(index, count, fresh(random.nextInt(4)));
+        }
+    }
+
+    @Test
+    public void mapIndexAgreesWithApply() {
+        Random random = new Random(11);
+        List<String> sources = fresh(20);
+        for (int step = 0; step < 2000; step++) {
+            QueueEdit edit = randomEdit(random, sources.size()).clampedTo(sources.size());
+            if (edit == null) continue;
+            List<String> result = edit.apply(sources);
+            Set<String> kept = new HashSet<>();
+            for (int position = 0; position < sources.size(); position++) {
+                int mapped = edit.mapIndex(position);
+                if (mapped < 0) continue;
+                assertEquals("step " + step + " " + edit.op, sources.get(position), result.get(mapped));
+                kept.add(sources.get(position));
+            }
+            // Every other item of the result is one the edit brought in
+            for (String item : result) assertTrue(item, kept.contains(item) || edit.items.contains(item));
+            int expected = sources.size() - kept.size();
+            int dropped = QueueEdit.REMOVE.equals(edit.op) || QueueEdit.REPLACE.equals(edit.op) ? edit.count : 0;
+            assertEquals(dropped, expected);
+
+            int current = sources.isEmpty() ? -1 : random.nextInt(sources.size());
+            int after = edit.currentIndexAfter(current, result.size());
+            if (result.isEmpty()) assertEquals(-1, after);
+            else assertTrue(after >= 0 && after < result.size());
+
+            List<String> inPlace = new ArrayList<>(sources);
+            edit.applyTo(inPlace);
+            assertEquals(result, inPlace);
+            sources = result.size() < 5 ? fresh(20) : result;
+        }
+    }
+
+    @Test
+    public void clampedToDropsNoOps() {
+        assertNull(QueueEdit.insert(0, Collections.emptyList()).clampedTo(3));
+        assertNull(QueueEdit.remove(3, 2).clampedTo(3));
+        assertNull(QueueEdit.move(1, 1, 1).clampedTo(3));
+        assertNull(QueueEdit.replace(5, 1, Collections.emptyList()).clampedTo(3));
+        QueueEdit append = QueueEdit.insert(QueueEdit.APPEND_INDEX, Arrays.asList("x")).clampedTo(3);
+        assertNotNull(append);
+        assertEquals(3, append.index);
+    }
+
+    @Test
+    public void keepingSplitsAReplaceAroundTheSameSource() {
+        Random random = new Random(5);
+        for (int step = 0; step < 500; step++) {
+            List<String> sources = fresh(10);
+            int index = random.nextInt(10);
+            int count = 1 + random.nextInt(10 - index);
+            int position = index + random.nextInt(count);
+            List<String> items = fresh(random.nextInt(4));
+            int offset = Math.min(position - index, items.size());
+            items.add(offset, sources.get(position));
+            QueueEdit edit = QueueEdit.replace(index, count, items).clampedTo(sources.size());
+            List<QueueEdit> parts = edit.keeping(sources, index + offset);
+            if (offset != position - index) {
+                assertNull(parts);
+                continue;
+            }
+            assertNotNull(parts);
+            List<String> split = sources;
+            int current = position;
+            for (QueueEdit part : parts) {
+                current = part.mapIndex(current);
+                split = part.apply(split);
+            }
+            assertEquals(edit.apply(sources), split);
+            assertEquals(position, current);
+        }
+    }
+
+    @Test
+    public void keepingIgnoresOtherEdits() {
+        List<String> sources = Arrays.asList("a", "b", "c");
+        assertNull(QueueEdit.replace(0, 2, Arrays.asList("x", "y")).keeping(sources, 1));
+        assertNull(QueueEdit.replace(0, 1, Arrays.asList("b")).keeping(sources, 1));
+        assertNull(QueueEdit.remove(1, 1).keeping(sources, 1));
+        assertEquals(0, QueueEdit.replace(1, 1, Arrays.asList("b")).keeping(sources, 1).size());
+    }
+
+    @Test
+    public void jsonRoundTrip() {
+        QueueEdit edit = QueueEdit.replace(2, 3, Arrays.asList("a,b", "c\"d"));
+        QueueEdit back = QueueEdit.fromJson(edit.toJson());
+        assertNotNull(back);
+        assertEquals(edit.op, back.op);
+        assertEquals(edit.index, back.index);
+        assertEquals(edit.count, back.count);
+        assertEquals(edit.newIndex, back.newIndex);
+        assertEquals(edit.items, back.items);
+    }
+}
@@ -0,0 +1,88 @@
+package com.tyranokim.voicechat.audio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class StatusDeltaEncoderTest {
+    private static AudioStatus.Builder playing(long positionMs, long atMs) {
+        return new AudioStatus.Builder()
+            .playing(true)
+            .playWhenReady(true)
+            .positionMs(positionMs)
+            .timestampMs(atMs)
+            .durationMs(300_000)
+            .index(0)
+            .title("Song")
+            .state("playing");
+    }
+
+    @Test
+    public void firstDeltaHasEverySubscribedField() {
+        JSObject delta = new StatusDeltaEncoder(null).encode(playing(0, 1000).build());
+        assertNotNull(delta);
+        for (String field : StatusDeltaEncoder.FIELDS) {
+            if (!StatusDeltaEncoder.FIELD_POSITION.equals(field)) assertTrue(field, delta.has(field));
+        }
+        assertTrue(delta.has("anchor"));
+        assertEquals(JSONObject.NULL, delta.opt("artist"));
+    }
+
+    @Test
+    public void unchangedStatusEncodesToNothing() {
+        StatusDeltaEncoder encoder = new StatusDeltaEncoder(null);
+        encoder.encode(playing(0, 1000).build());
+        assertNull(encoder.encode(playing(0, 1000).build()));
+    }
+
+    @Test
+    public void onlyChangedFieldsAreSent() {
+        StatusDeltaEncoder encoder = new StatusDeltaEncoder(null);
+        encoder.encode(playing(0, 1000).build());
+        JSObject delta = encoder.encode(playing(0, 1000).title("Other").index(1).build());
+        assertNotNull(delta);
+        assertEquals("Other", delta.opt("title"));
+        assertEquals(1, delta.optInt("index"));
+        assertEquals(2, delta.length());
+    }
+
+    @Test
+    public void onlySubscribedFieldsAreSent() {
+        StatusDeltaEncoder encoder = new StatusDeltaEncoder(Arrays.asList("title", "state"));
+        JSObject first = encoder.encode(playing(0, 1000).build());
+        assertNotNull(first);
+        assertEquals(2, first.length());
+        assertFalse(first.has("anchor"));
+        assertNull(encoder.encode(playing(5000, 1000).index(3).build()));
+    }
+
+    @Test
+    public void anchorOnlyWhenThePositionJumps() {
+        StatusDeltaEncoder encoder = new StatusDeltaEncoder(Arrays.asList(StatusDeltaEncoder.FIELD_POSITION));
+        JSObject first = encoder.encode(playing(10_000, 1000).build());
+        assertNotNull(first);
+        JSONObject anchor = first.optJSONObject("anchor");
+        assertEquals(10_000, anchor.optLong("positionMs"));
+        assertEquals(1000, anchor.optLong("atMs"));
+        assertEquals(1.0, anchor.optDouble("rate"), 0);
+
+        // Where the anchor predicts, within tolerance
+        assertNull(encoder.encode(playing(15_100, 6000).build()));
+        // Seek
+        assertNotNull(encoder.encode(playing(60_000, 7000).build()));
+        // Pause: the rate drops to 0
+        JSObject paused = encoder.encode(playing(61_000, 8000).playing(false).build());
+        assertNotNull(paused);
+        assertEquals(0.0, paused.optJSONObject("anchor").optDouble("rate"), 0);
+        assertNull(encoder.encode(playing(61_000, 20_000).playing(false).build()));
+    }
+}
@@ -12,9 +12,41 @@ export interface BackgroundAudioStatus {
 	index: number;
 	hasNext: boolean;
 	hasPrev: boolean;
+	shuffle?: boolean;
+	repeatMode?: RepeatMode;
 	error?: string;
 	state?: 'idle' | 'buffering' | 'ready' | 'playing' | 'paused' | 'ended' | 'error';
 	playbackState?: string;
+	bufferProfile?: BufferProfile;
+}
+
+export type BufferProfile = 'auto' | 'low_latency' | 'balanced' | 'deep';
+
+export type RepeatMode = 'off' | 'one' | 'all';
+
+// Omitted fields keep their current value; shuffle keeps the current track first
+export interface PlayMode {
+	shuffle?: boolean;
+	repeat?: RepeatMode;
+}
+
+// Position at atMs (epoch ms); advances by rate ms per ms (0 while not playing)
+export interface PositionAnchor {
+	positionMs: number;
+	atMs: number;
+	rate: number;
+}
+
+export type StatusField = 'position' | Exclude<keyof BackgroundAudioStatus, 'positionMs'>;
+
+// Only the subscribed fields that changed; anchor only when the position jumped
+export type BackgroundAudioStatusDelta = Partial<Omit<BackgroundAudioStatus, 'positionMs'>> & {
+	anchor?: PositionAnchor;
+};
+
+export interface StatusSubscriptionOptions {
+	fields?: StatusField[]; // default: all
+	maxRateHz?: number; // default 1
 }
 
 export interface PlayOptions {
@@ -26,6 +58,13 @@ export interface PlayOptions {
 	durationMs?: number; // optional duration hint (e.g. from MediaStore for saved tracks)
 }
 
+export interface ResolverOptions {
+	hedging?: boolean; // fire a second stream request after the observed p95 (default true)
+	hedgeMinDelayMs?: number;
+	hedgeMaxDelayMs?: number;
+	directCdn?: boolean; // play VOD directly from the CDN, proxy fallback on 403/410 (default true)
+}
+
 interface BackgroundAudioPlugin {
 	play(options: PlayOptions): Promise<void>;
 	pause(): Promise<void>;
@@ -35,11 +74,28 @@ interface BackgroundAudioPlugin {
 	prev(): Promise<void>;
 	seek(options: { positionMs: number }): Promise<void>;
 	setRate(options: { rate: number }): Promise<void>;
-	getStatus(): Promise<{ requested: boolean }>;
+	setPlayMode(options: PlayMode): Promise<void>;
+	appendToQueue(options: { items: string[] }): Promise<void>;
+	insertIntoQueue(options: { index: number; items: string[] }): Promise<void>;
+	removeFromQueue(options: { index: number; count?: number }): Promise<void>;
+	moveInQueue(options: { index: number; count?: number; newIndex: number }): Promise<void>;
+	replaceQueueRange(options: { index: number; count: number; items: string[] }): Promise<void>;
+	// A fresh 'status' event always follows; status: the service's current snapshot (if known) right away
+	getStatus(): Promise<{ requested: boolean; status?: BackgroundAudioStatus }>;
+	setResolverOptions(options: ResolverOptions): Promise<void>;
+	setResolveWindow(options: { ahead?: number; behind?: number }): Promise<void>;
+	setMediaCacheSize(options: { maxMb?: number }): Promise<{ maxMb: number; usedMb: number }>;
+	setBufferProfile(options: { profile: BufferProfile }): Promise<void>;
+	subscribeStatus(options: StatusSubscriptionOptions): Promise<void>;
+	unsubscribeStatus(): Promise<void>;
 	addListener(
 		eventName: 'status',
 		listenerFunc: (status: BackgroundAudioStatus) => void
 	): Promise<{ remove: () => Promise<void> }>;
+	addListener(
+		eventName: 'statusDelta',
+		listenerFunc: (delta: BackgroundAudioStatusDelta) => void
+	): Promise<{ remove: () => Promise<void> }>;
 }
 
 const BackgroundAudio = registerPlugin<BackgroundAudioPlugin>('BackgroundAudio');
@@ -52,9 +108,41 @@ export const next = () => BackgroundAudio.next();
 export const prev = () => BackgroundAudio.prev();
 export const seek = (positionMs: number) => BackgroundAudio.seek({ positionMs });
 export const setRate = (rate: number) => BackgroundAudio.setRate({ rate });
+export const setPlayMode = (mode: PlayMode) => BackgroundAudio.setPlayMode(mode);
+
+// Queue edits (source URLs, same form as PlayOptions.playlist): applied in place, the current
+// track keeps playing and already-resolved items stay resolved
+export const appendToQueue = (items: string[]) => BackgroundAudio.appendToQueue({ items });
+export const insertIntoQueue = (index: number, items: string[]) => BackgroundAudio.insertIntoQueue({ index, items });
+export const removeFromQueue = (index: number, count = 1) => BackgroundAudio.removeFromQueue({ index, count });
+// newIndex: where the first moved item ends up
+export const moveInQueue = (index: number, newIndex: number, count = 1) =>
+	BackgroundAudio.moveInQueue({ index, count, newIndex });
+export const replaceQueueRange = (index: number, count: number, items: string[]) =>
+	BackgroundAudio.replaceQueueRange({ index, count, items });
 export const requestStatus = () => BackgroundAudio.getStatus();
+export const setResolverOptions = (options: ResolverOptions) => BackgroundAudio.setResolverOptions(options);
+export const setResolveWindow = (ahead: number, behind: number) => BackgroundAudio.setResolveWindow({ ahead, behind });
+export const setMediaCacheSize = (maxMb?: number) => BackgroundAudio.setMediaCacheSize({ maxMb });
+export const setBufferProfile = (profile: BufferProfile) => BackgroundAudio.setBufferProfile({ profile });
 
 export const onStatus = async (callback: (status: BackgroundAudioStatus) => void) => {
 	const handle = await BackgroundAudio.addListener('status', callback);
 	return () => handle.remove();
 };
+
+export const interpolatePosition = (anchor: PositionAnchor, now = Date.now()) =>
+	Math.max(0, anchor.positionMs + (now - anchor.atMs) * anchor.rate);
+
+// Deltas until the returned function is called; 'status' listeners keep getting full events
+export const subscribeStatus = async (
+	options: StatusSubscriptionOptions,
+	callback: (delta: BackgroundAudioStatusDelta) => void
+) => {
+	const handle = await BackgroundAudio.addListener('statusDelta', callback);
+	await BackgroundAudio.subscribeStatus(options);
+	return async () => {
+		await BackgroundAudio.unsubscribeStatus();
+		await handle.remove();
+	};
+};